@@ -0,0 +1,96 @@
+package com.inqbarna.iqlocation;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Process wide {@link GoogleApiClient} for the location APIs, shared by every {@link LocationHelper} and
+ * {@link LocationPermissionRequestDelegate}. Users acquire it while they need it, it gets connected with the
+ * first of them and disconnected when the last one releases it. Acquiring it while already connected gets the
+ * {@link GoogleApiClient.ConnectionCallbacks#onConnected(android.os.Bundle)} call right away, no reconnection
+ * is involved.
+ */
+public final class ApiClientManager {
+
+    private static final String TAG = "IQLocation";
+
+    private static ApiClientManager instance;
+
+    private final GoogleApiClient apiClient;
+    private       int             users;
+
+    private ApiClientManager(Context appContext) {
+        apiClient = new GoogleApiClient.Builder(appContext)
+                .addApi(LocationServices.API)
+                .build();
+    }
+
+    public static synchronized ApiClientManager get(@NonNull Context context) {
+        if (null == instance) {
+            instance = new ApiClientManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the shared client, only usable between {@link #acquire} and {@link #release} calls
+     */
+    public GoogleApiClient getClient() {
+        return apiClient;
+    }
+
+    public void acquire(@NonNull GoogleApiClient.ConnectionCallbacks callbacks) {
+        acquire(callbacks, null);
+    }
+
+    /**
+     * Registers the callbacks and connects the client if no one else did. When it is already connected play
+     * services calls {@code onConnected} as soon as the callbacks are registered.
+     */
+    public synchronized void acquire(@NonNull GoogleApiClient.ConnectionCallbacks callbacks, @Nullable GoogleApiClient.OnConnectionFailedListener failedListener) {
+        users++;
+        if (null != failedListener) {
+            apiClient.registerConnectionFailedListener(failedListener);
+        }
+        apiClient.registerConnectionCallbacks(callbacks);
+        if (!apiClient.isConnected() && !apiClient.isConnecting()) {
+            if (LocationHelper.isDebug()) Log.d(TAG, "Connecting shared Google Api Client");
+            apiClient.connect();
+        }
+    }
+
+    public void release(@NonNull GoogleApiClient.ConnectionCallbacks callbacks) {
+        release(callbacks, null);
+    }
+
+    /**
+     * Unregisters the callbacks, the client gets disconnected if no one else is using it
+     */
+    public synchronized void release(@NonNull GoogleApiClient.ConnectionCallbacks callbacks, @Nullable GoogleApiClient.OnConnectionFailedListener failedListener) {
+        apiClient.unregisterConnectionCallbacks(callbacks);
+        if (null != failedListener) {
+            apiClient.unregisterConnectionFailedListener(failedListener);
+        }
+        if (users == 0) {
+            Log.w(TAG, "Shared Google Api Client released more times than acquired");
+            return;
+        }
+        users--;
+        if (users == 0) {
+            if (LocationHelper.isDebug()) Log.d(TAG, "No one using the shared Google Api Client, disconnecting");
+            apiClient.disconnect();
+        }
+    }
+
+    /**
+     * @return how many are holding the client right now
+     */
+    public synchronized int getUserCount() {
+        return users;
+    }
+}
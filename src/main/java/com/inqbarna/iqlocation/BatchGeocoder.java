@@ -0,0 +1,182 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.util.ErrorHandler;
+import com.inqbarna.iqlocation.util.GeocoderError;
+import com.inqbarna.iqlocation.util.RateLimiter;
+
+import org.reactivestreams.Publisher;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.functions.Function;
+
+/**
+ * Reverse geocodes whole location traces. Points falling in the same cell as a recent one reuse its lookup,
+ * distinct lookups run with bounded parallelism and an optional request rate, and results are emitted in the
+ * same order the locations were given, honoring downstream backpressure. Lookups answered by the geocoder caches
+ * do not count against the rate, which can be shared with other batches through {@link Builder#setRateLimiter}.
+ */
+public class BatchGeocoder {
+
+    public static final int    DEFAULT_MAX_CONCURRENCY     = 4;
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
+    private static final int DEDUP_WINDOW = 256;
+
+    private final Geocoder     geocoder;
+    private final int          maxResults;
+    private final String       languageCode;
+    private final int          maxConcurrency;
+    private final RateLimiter  rateLimiter;
+    private final ErrorHandler errorHandler;
+
+    public static class Builder {
+        private final Geocoder geocoder;
+        private int          maxResults        = 1;
+        private String       languageCode      = Locale.getDefault().getLanguage();
+        private int          maxConcurrency    = DEFAULT_MAX_CONCURRENCY;
+        private double       requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+        private RateLimiter  rateLimiter;
+        private ErrorHandler errorHandler;
+
+        public Builder(@NonNull Geocoder geocoder) {
+            this.geocoder = geocoder;
+        }
+
+        public Builder setMaxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public Builder setLanguage(String languageCode) {
+            this.languageCode = languageCode;
+            return this;
+        }
+
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency <= 0) {
+                throw new IllegalArgumentException("Concurrency must be positive");
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond zero or less to not limit the request rate
+         */
+        public Builder setMaxRequestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Takes request permits from the given limiter instead of one of its own, so several batches together keep to
+         * its rate. Overrides {@link #setMaxRequestsPerSecond(double)}.
+         */
+        public Builder setRateLimiter(@Nullable RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Errors intercepted by the handler are emitted as an empty address list for that location, otherwise they
+         * terminate the batch
+         */
+        public Builder setErrorHandler(@Nullable ErrorHandler errorHandler) {
+            this.errorHandler = errorHandler;
+            return this;
+        }
+
+        public BatchGeocoder build() {
+            return new BatchGeocoder(this);
+        }
+    }
+
+    private BatchGeocoder(Builder builder) {
+        geocoder = builder.geocoder;
+        maxResults = builder.maxResults;
+        languageCode = builder.languageCode;
+        maxConcurrency = builder.maxConcurrency;
+        rateLimiter = null != builder.rateLimiter ? builder.rateLimiter : new RateLimiter(builder.requestsPerSecond);
+        errorHandler = builder.errorHandler;
+    }
+
+    public Flowable<List<Address>> geocode(List<? extends Location> locations) {
+        return geocode(Flowable.fromIterable(locations));
+    }
+
+    public Flowable<List<Address>> geocode(final Flowable<? extends Location> locations) {
+        return Flowable.defer(
+                new Callable<Publisher<List<Address>>>() {
+                    @Override
+                    public Publisher<List<Address>> call() {
+                        final Map<Long, Single<List<Address>>> recent = new LinkedHashMap<Long, Single<List<Address>>>(16, 0.75f, true) {
+                            @Override
+                            protected boolean removeEldestEntry(Map.Entry<Long, Single<List<Address>>> eldest) {
+                                return size() > DEDUP_WINDOW;
+                            }
+                        };
+
+                        return locations.concatMapEager(
+                                new Function<Location, Publisher<List<Address>>>() {
+                                    @Override
+                                    public Publisher<List<Address>> apply(Location location) {
+                                        final long cell = geocoder.cellOf(location.getLatitude(), location.getLongitude());
+                                        Single<List<Address>> lookup = recent.get(cell);
+                                        if (null == lookup) {
+                                            lookup = lookup(location.getLatitude(), location.getLongitude()).cache();
+                                            recent.put(cell, lookup);
+                                        }
+                                        return lookup.toFlowable();
+                                    }
+                                },
+                                maxConcurrency,
+                                maxConcurrency);
+                    }
+                });
+    }
+
+    private Single<List<Address>> lookup(final double lat, final double lng) {
+        // only lookups missing every cache tier reserve a permit, and go to the provider without reading the tiers again
+        Single<List<Address>> network = Single.defer(
+                new Callable<SingleSource<List<Address>>>() {
+                    @Override
+                    public SingleSource<List<Address>> call() {
+                        Single<List<Address>> request = geocoder.requestAddressesAsync(lat, lng, maxResults, languageCode);
+                        final long wait = rateLimiter.reserve();
+                        if (wait > 0) {
+                            request = request.delaySubscription(wait, TimeUnit.NANOSECONDS);
+                        }
+                        return request;
+                    }
+                });
+        return geocoder.getCachedAddressesAsync(lat, lng, maxResults, languageCode)
+                       .switchIfEmpty(network.toMaybe())
+                       .toSingle()
+                       .onErrorResumeNext(
+                               new Function<Throwable, Single<List<Address>>>() {
+                                   @Override
+                                   public Single<List<Address>> apply(Throwable error) {
+                                       if (error instanceof GeocoderError && null != errorHandler
+                                               && errorHandler.chanceToInterceptGeocoderError((GeocoderError) error)) {
+                                           return Single.just(Collections.<Address>emptyList());
+                                       }
+                                       return Single.error(error);
+                                   }
+                               });
+    }
+}
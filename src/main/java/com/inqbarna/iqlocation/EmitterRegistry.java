@@ -0,0 +1,132 @@
+package com.inqbarna.iqlocation;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Copy on write set of emitters. Registration swaps an immutable array with CAS and dispatch walks a snapshot
+ * of it, so no lock is held while calling subscribers and a slow one does not hold back registrations or the
+ * location callback.
+ */
+final class EmitterRegistry<T> {
+
+    private static final ObservableEmitter<?>[] EMPTY = new ObservableEmitter<?>[0];
+
+    private final AtomicReference<ObservableEmitter<?>[]> emitters = new AtomicReference<>(EMPTY);
+
+    void add(ObservableEmitter<? super T> emitter) {
+        for (;;) {
+            final ObservableEmitter<?>[] current = emitters.get();
+            final ObservableEmitter<?>[] next = new ObservableEmitter<?>[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = emitter;
+            if (emitters.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    void remove(ObservableEmitter<? super T> emitter) {
+        for (;;) {
+            final ObservableEmitter<?>[] current = emitters.get();
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == emitter) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+
+            final ObservableEmitter<?>[] next;
+            if (current.length == 1) {
+                next = EMPTY;
+            } else {
+                next = new ObservableEmitter<?>[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            }
+            if (emitters.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return emitters.get().length == 0;
+    }
+
+    /**
+     * Delivers the value to every live emitter, or just counts them when the value is null
+     *
+     * @return the number of live emitters
+     */
+    @SuppressWarnings("unchecked")
+    int onNext(T value) {
+        final ObservableEmitter<?>[] current = emitters.get();
+        int alive = 0;
+        for (ObservableEmitter<?> emitter : current) {
+            if (!emitter.isDisposed()) {
+                alive++;
+                if (null != value) {
+                    // only emitters of T or a supertype are ever added
+                    ((ObservableEmitter<? super T>) emitter).onNext(value);
+                }
+            }
+        }
+        if (alive != current.length) {
+            compact(current, alive);
+        }
+        return alive;
+    }
+
+    void onComplete() {
+        for (ObservableEmitter<?> emitter : emitters.getAndSet(EMPTY)) {
+            if (!emitter.isDisposed()) {
+                emitter.onComplete();
+            }
+        }
+    }
+
+    void onError(Throwable error) {
+        for (ObservableEmitter<?> emitter : emitters.getAndSet(EMPTY)) {
+            if (!emitter.isDisposed()) {
+                emitter.onError(error);
+            }
+        }
+    }
+
+    /**
+     * Drops disposed emitters
+     *
+     * @return whether there is any live emitter left
+     */
+    boolean pruneDisposed() {
+        return onNext(null) > 0;
+    }
+
+    /**
+     * Replaces the array with a copy holding only live emitters in a single pass. If it changed meanwhile the
+     * attempt is dropped, disposed emitters are pruned again on next dispatch.
+     *
+     * @param alive live emitters counted while dispatching, disposal is final so no more than these can remain
+     */
+    private void compact(ObservableEmitter<?>[] current, int alive) {
+        ObservableEmitter<?>[] next = alive == 0 ? EMPTY : new ObservableEmitter<?>[alive];
+        int size = 0;
+        for (ObservableEmitter<?> emitter : current) {
+            if (!emitter.isDisposed() && size < next.length) {
+                next[size++] = emitter;
+            }
+        }
+        if (size < next.length) {
+            ObservableEmitter<?>[] trimmed = new ObservableEmitter<?>[size];
+            System.arraycopy(next, 0, trimmed, 0, size);
+            next = trimmed;
+        }
+        emitters.compareAndSet(current, next);
+    }
+}
@@ -0,0 +1,57 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import java.util.List;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.functions.Function;
+
+/**
+ * Asks a primary provider first, typically a {@link LocalGeocodingProvider}, and only goes to the fallback one
+ * when the primary has no answer. Other errors, like i/o ones, are not recovered.
+ */
+public class FallbackGeocodingProvider implements GeocodingProvider {
+
+    private final GeocodingProvider primary;
+    private final GeocodingProvider fallback;
+
+    public FallbackGeocodingProvider(@NonNull GeocodingProvider primary, @NonNull GeocodingProvider fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+    }
+
+    public GeocodingProvider getPrimary() {
+        return primary;
+    }
+
+    public GeocodingProvider getFallback() {
+        return fallback;
+    }
+
+    @Override
+    public Single<List<Address>> getAddresses(final double lat, final double lng, final int maxResults, final String languageCode) {
+        return primary.getAddresses(lat, lng, maxResults, languageCode)
+                      .onErrorResumeNext(
+                              new Function<Throwable, SingleSource<? extends List<Address>>>() {
+                                  @Override
+                                  public SingleSource<? extends List<Address>> apply(Throwable throwable) throws Exception {
+                                      if (throwable instanceof GeocoderError) {
+                                          return fallback.getAddresses(lat, lng, maxResults, languageCode);
+                                      }
+                                      return Single.error(throwable);
+                                  }
+                              });
+    }
+
+    @Override
+    public Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode) {
+        return primary.getLocationInfo(addressName, languageCode)
+                      .switchIfEmpty(fallback.getLocationInfo(addressName, languageCode));
+    }
+}
@@ -0,0 +1,131 @@
+package com.inqbarna.iqlocation;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.OnSuccessListener;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Backend on {@link FusedLocationProviderClient}. There is no connect phase, updates can be requested as soon as
+ * it starts, and they are delivered on a dedicated background thread instead of the main one. The thread lives
+ * from start to stop, a later start spawns a new one.
+ */
+public class FusedLocationClientBackend implements LocationBackend {
+
+    private static final String THREAD_NAME = "IQLocation-updates";
+
+    private final FusedLocationProviderClient client;
+
+    private HandlerThread      thread;
+    private Executor           executor;
+    private volatile Callbacks callbacks;
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            final Callbacks current = callbacks;
+            if (null != current) {
+                current.onLocationsChanged(result.getLocations());
+            }
+        }
+    };
+
+    public FusedLocationClientBackend(@NonNull Context context) {
+        client = LocationServices.getFusedLocationProviderClient(context.getApplicationContext());
+    }
+
+    @Override
+    public synchronized void start(@NonNull final Callbacks callbacks) {
+        if (null != this.callbacks) {
+            return;
+        }
+        thread = new HandlerThread(THREAD_NAME);
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        executor = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                handler.post(command);
+            }
+        };
+        this.callbacks = callbacks;
+        // posted so the caller does not get called back while still starting us
+        handler.post(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (callbacks == FusedLocationClientBackend.this.callbacks) {
+                            callbacks.onReady();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (null == callbacks) {
+            return;
+        }
+        callbacks = null;
+        client.removeLocationUpdates(locationCallback);
+        // pending callbacks are for the stopped session and dropped anyway
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            thread.quitSafely();
+        } else {
+            thread.quit();
+        }
+        thread = null;
+        executor = null;
+    }
+
+    @Override
+    public boolean isReady() {
+        return null != callbacks;
+    }
+
+    @Override
+    public boolean requiresLocationPermission() {
+        return true;
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public synchronized void requestLastLocation() {
+        final Callbacks current = callbacks;
+        if (null == current) {
+            return;
+        }
+        //noinspection MissingPermission
+        client.getLastLocation().addOnSuccessListener(
+                executor,
+                new OnSuccessListener<Location>() {
+                    @Override
+                    public void onSuccess(Location location) {
+                        if (current == callbacks) {
+                            current.onLocationChanged(location);
+                        }
+                    }
+                });
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public synchronized void requestUpdates(@NonNull LocationRequest request) {
+        if (isReady()) {
+            //noinspection MissingPermission
+            client.requestLocationUpdates(request, locationCallback, thread.getLooper());
+        }
+    }
+}
@@ -5,33 +5,29 @@ package com.inqbarna.iqlocation;
  */
 
 import android.location.Address;
-import android.os.Bundle;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
-import android.util.SparseArray;
 
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
+import com.inqbarna.iqlocation.cache.DiskGeocodeCache;
+import com.inqbarna.iqlocation.cache.ForwardGeocodeCache;
+import com.inqbarna.iqlocation.cache.ReverseGeocodeCache;
+import com.inqbarna.iqlocation.cache.ReverseGeocodeKey;
+import com.inqbarna.iqlocation.util.GeoHash;
 import com.inqbarna.iqlocation.util.GeocoderError;
+import com.inqbarna.iqlocation.util.SingleFlight;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.Callable;
 
-import okhttp3.Call;
-import okhttp3.HttpUrl;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 public class Geocoder {
 
@@ -41,265 +37,375 @@ public class Geocoder {
     public static final  String LOCATION_APPROXIMATE = "APPROXIMATE";
 
 
-    private static boolean DEBUG_PRINT = false;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10 * 1000; // 10 seconds in millis
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS    = 15 * 1000; // 15 seconds in millis
+
+    static boolean DEBUG_PRINT = false;
+
+    private static volatile Geocoder defaultInstance;
+
+    private final GeocodingProvider   provider;
+    private final ReverseGeocodeCache reverseCache;
+    private final DiskGeocodeCache    diskCache;
+    private final ForwardGeocodeCache forwardCache;
+
+    private final SingleFlight<ReverseGeocodeKey, List<Address>> pendingReverse = new SingleFlight<>();
+    private final SingleFlight<String, LocationInfo>             pendingForward = new SingleFlight<>();
 
     public static void setDebug(boolean enable) {
         DEBUG_PRINT = enable;
     }
 
-    public static List<Address> getFromLocation(double lat, double lng, int maxResult, String languageCode) {
-
-        if (Looper.getMainLooper().equals(Looper.myLooper())) {
-            throw new IllegalStateException("Cannot run this method from UI thread");
+    public static class Builder {
+        private GeocodingProvider provider;
+        private GeocodingProvider localProvider;
+        private OkHttpClient httpClient;
+        private long         connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long         readTimeoutMillis    = DEFAULT_READ_TIMEOUT_MILLIS;
+
+        private ReverseGeocodeCache reverseCache;
+        private DiskGeocodeCache    diskCache;
+        private ForwardGeocodeCache forwardCache;
+
+        /**
+         * Resolve requests with the given provider instead of the Google geocode webservice, http settings on this
+         * builder are ignored then
+         */
+        public Builder setProvider(@Nullable GeocodingProvider provider) {
+            this.provider = provider;
+            return this;
         }
 
-        String address = String.format(
-                Locale.ENGLISH, "http://maps.googleapis.com/maps/api/geocode/json?latlng=%1$f,%2$f&sensor=false&language=" + languageCode,
-                lat, lng);
+        /**
+         * Answer from the given provider first, for instance a {@link LocalGeocodingProvider} over a
+         * {@link com.inqbarna.iqlocation.offline.MappedPlaceIndex}, and go to the configured one (the webservice by
+         * default) only when it has no result
+         *
+         * @see FallbackGeocodingProvider
+         */
+        public Builder setLocalFirst(@Nullable GeocodingProvider local) {
+            this.localProvider = local;
+            return this;
+        }
 
-        if (DEBUG_PRINT) {
-            Log.d(TAG, "Geocoder request: " + address);
+        /**
+         * Reuse the connection pool and dispatcher of an already existing client, timeouts configured
+         * on this builder will still be applied
+         */
+        public Builder setHttpClient(OkHttpClient client) {
+            this.httpClient = client;
+            return this;
         }
 
+        public Builder setConnectTimeout(long millis) {
+            this.connectTimeoutMillis = millis;
+            return this;
+        }
 
-        OkHttpClient client = new OkHttpClient();
+        public Builder setReadTimeout(long millis) {
+            this.readTimeoutMillis = millis;
+            return this;
+        }
 
-        Request.Builder builder = new Request.Builder();
+        /**
+         * Answer reverse geocoding requests from the given cache when possible, and store network results on it
+         */
+        public Builder setReverseCache(@Nullable ReverseGeocodeCache cache) {
+            this.reverseCache = cache;
+            return this;
+        }
 
-        builder.get().url(HttpUrl.parse(address));
-        final Call call = client.newCall(builder.build());
+        /**
+         * Persistent tier consulted after the in memory cache, for both reverse and forward lookups
+         */
+        public Builder setDiskCache(@Nullable DiskGeocodeCache cache) {
+            this.diskCache = cache;
+            return this;
+        }
 
-//        client.getParams().setParameter(AllClientPNames.USER_AGENT, "Mozilla/5.0 (Java) Gecko/20081007 java-geocoder");
+        /**
+         * Answer forward geocoding requests from the given cache when possible, ahead of the disk tier
+         */
+        public Builder setForwardCache(@Nullable ForwardGeocodeCache cache) {
+            this.forwardCache = cache;
+            return this;
+        }
 
+        public Geocoder build() {
+            GeocodingProvider geocodingProvider = provider;
+            if (null == geocodingProvider) {
+                geocodingProvider = new GoogleGeocodingProvider(
+                        GoogleGeocodingProvider.newHttpClient(httpClient, connectTimeoutMillis, readTimeoutMillis));
+            }
+            if (null != localProvider) {
+                geocodingProvider = new FallbackGeocodingProvider(localProvider, geocodingProvider);
+            }
+            return new Geocoder(geocodingProvider, reverseCache, diskCache, forwardCache);
+        }
+    }
 
-        List<Address> retList = null;
+    public static Builder builder() {
+        return new Builder();
+    }
 
-        try {
-            final Response response = call.execute();
-            JSONObject jsonObject = new JSONObject(response.body().string());
+    /**
+     * Process wide instance used by the static helpers, it keeps a single connection pool alive so
+     * consecutive requests skip the TCP/TLS handshake
+     *
+     * @return the shared geocoder
+     */
+    public static Geocoder getDefault() {
+        Geocoder instance = defaultInstance;
+        if (null == instance) {
+            synchronized (Geocoder.class) {
+                instance = defaultInstance;
+                if (null == instance) {
+                    instance = builder().build();
+                    defaultInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
 
-            retList = new ArrayList<Address>();
+    public static void setDefault(@NonNull Geocoder geocoder) {
+        defaultInstance = geocoder;
+    }
 
-            final String status = jsonObject.getString("status");
-            if ("OK".equalsIgnoreCase(status)) {
-                JSONArray results = jsonObject.getJSONArray("results");
-                if (results.length() > 0) {
-                    for (int i = 0; i < results.length() && i < maxResult; i++) {
-                        JSONObject result = results.getJSONObject(i);
+    public static List<Address> getFromLocation(double lat, double lng, int maxResult, String languageCode) {
+        return getDefault().getAddresses(lat, lng, maxResult, languageCode);
+    }
 
-                        if (DEBUG_PRINT) {
-                            Log.d(TAG, result.toString());
-                        }
+    public static LocationInfo getLatLngBoundsFromAddress(String addressName, String languageCode) {
+        return getDefault().getLocationInfo(addressName, languageCode);
+    }
 
-                        Address addr = new Address(Locale.getDefault());
-                        /*String formattedAddress = null;
-                        if (result.has("formatted_address")) {
-                            formattedAddress = result.getString("formatted_address");
-                        }
-                        */
-
-                        if (result.has("geometry")) {
-                            JSONObject geometry = result.getJSONObject("geometry");
-                            if (geometry.has(LOCATION_TYPE)) {
-                                String locationType = geometry.getString(LOCATION_TYPE);
-                                Bundle bundle = new Bundle();
-                                bundle.putString(LOCATION_TYPE, locationType);
-                                addr.setExtras(bundle);
-                            }
+    public Geocoder(@NonNull OkHttpClient httpClient) {
+        this(new GoogleGeocodingProvider(httpClient), null, null);
+    }
 
-                            if (geometry.has("location")) {
-                                final JSONObject location = geometry.getJSONObject("location");
-                                addr.setLatitude(location.getDouble("lat"));
-                                addr.setLongitude(location.getDouble("lng"));
-                            }
-                        }
+    public Geocoder(@NonNull GeocodingProvider provider, @Nullable ReverseGeocodeCache reverseCache, @Nullable DiskGeocodeCache diskCache) {
+        this(provider, reverseCache, diskCache, null);
+    }
 
-                        JSONArray components = result.getJSONArray("address_components");
-                        String streetNumber = null;
-                        String route = null;
-
-                        SparseArray<String> adminAreas = new SparseArray<>();
-
-                        for (int a = 0; a < components.length(); a++) {
-
-                            JSONObject component = components.getJSONObject(a);
-                            JSONArray types = component.getJSONArray("types");
-                            for (int j = 0; j < types.length(); j++) {
-                                String type = types.getString(j);
-                                if (type.equals("locality")) {
-                                    addr.setLocality(component.getString("long_name"));
-                                } else if (type.equals("sublocality")) {
-                                    addr.setSubLocality(component.getString("long_name"));
-                                } else if (type.equals("street_number")) {
-                                    streetNumber = component.getString("long_name");
-                                } else if (type.equals("route") || type.equals("street_name")) {
-                                    route = component.getString("long_name");
-                                } else if (type.equals("country")) {
-                                    addr.setCountryCode(component.getString("short_name"));
-                                    addr.setCountryName(component.getString("long_name"));
-                                } else if (type.equals("administrative_area_level_2")) {
-                                    adminAreas.put(1, component.getString("long_name"));
-                                } else if (type.equals("administrative_area_level_1")) {
-                                    adminAreas.put(0, component.getString("long_name"));
-                                } else if (type.equals("administrative_area_level_3")) {
-                                    adminAreas.put(2, component.getString("long_name"));
-                                } else if (type.equals("administrative_area_level_4")) {
-                                    adminAreas.put(3, component.getString("long_name"));
-                                } else if (type.equals("postal_code")) {
-                                    addr.setPostalCode(component.getString("long_name"));
-                                }
-                            }
-                        }
+    public Geocoder(@NonNull GeocodingProvider provider, @Nullable ReverseGeocodeCache reverseCache, @Nullable DiskGeocodeCache diskCache,
+                    @Nullable ForwardGeocodeCache forwardCache) {
+        this.provider = provider;
+        this.reverseCache = reverseCache;
+        this.diskCache = diskCache;
+        this.forwardCache = forwardCache;
+    }
 
+    public GeocodingProvider getProvider() {
+        return provider;
+    }
 
-                        if (adminAreas.size() >= 1) {
-                            addr.setAdminArea(adminAreas.valueAt(0));
-                        }
+    @Nullable
+    public ReverseGeocodeCache getReverseCache() {
+        return reverseCache;
+    }
 
-                        if (adminAreas.size() >= 2) {
-                            addr.setSubAdminArea(adminAreas.valueAt(1));
-                        }
+    @Nullable
+    public DiskGeocodeCache getDiskCache() {
+        return diskCache;
+    }
 
-                        if (null != route && null != streetNumber) {
-                            addr.setAddressLine(0, route + " " + streetNumber);
-                        }
+    @Nullable
+    public ForwardGeocodeCache getForwardCache() {
+        return forwardCache;
+    }
 
-                        retList.add(addr);
-                    }
-                }
-            } else {
-                throw new GeocoderError(status);
-            }
+    /**
+     * @return the cell reverse lookups at the given coordinates are cached and coalesced on
+     */
+    public long cellOf(double lat, double lng) {
+        return GeoHash.encode(lat, lng, cellPrecision());
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Error calling Google geocode webservice.", e);
-            throw new GeocoderError("Error calling Google geocode webservice " + e.getMessage(), null); // because somehow stacktrace not printing
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
-            throw new GeocoderError("Error parsing Google geocode webservice response.", e);
-        } catch (Exception e) {
-            Log.e(TAG, "Unknown error in geocoder", e);
-            throw new GeocoderError("Unknown error in geocoder" + e.getMessage(), null);
-        }
+    /**
+     * @return geohash length of {@link #cellOf(double, double)}, the one of the memory cache so the disk tier is keyed
+     * on the same cells
+     */
+    private int cellPrecision() {
+        return null != reverseCache ? reverseCache.getPrecision() : ReverseGeocodeCache.DEFAULT_PRECISION;
+    }
 
-        return retList;
+    /**
+     * @return how many lookups were answered by joining an identical request already in progress
+     */
+    public long getCoalescedCount() {
+        return pendingReverse.getSharedCount() + pendingForward.getSharedCount();
     }
 
-    public static LocationInfo getLatLngBoundsFromAddress(String addressName, String languageCode) {
+    /**
+     * Blocking version of {@link #getAddressesAsync(double, double, int, String)}
+     */
+    public List<Address> getAddresses(double lat, double lng, int maxResult, String languageCode) {
 
         if (Looper.getMainLooper().equals(Looper.myLooper())) {
             throw new IllegalStateException("Cannot run this method from UI thread");
         }
 
-        try {
-            addressName = URLEncoder.encode(addressName, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new GeocoderError("Failed encoding place", e);
-        }
-
-        String address = "http://maps.googleapis.com/maps/api/geocode/json?address=" + addressName + "&sensor=false&language=" + languageCode;
-        if (DEBUG_PRINT) {
-            Log.d(TAG, "Will request: " + address);
-        }
-
-        OkHttpClient client = new OkHttpClient();
-        final Call call = client.newCall(new Request.Builder().get().url(HttpUrl.parse(address)).build());
-
-        LocationInfo locationInfo = null;
-
-        try {
-            final Response response = call.execute();
-            String json = response.body().string();
-
-            if (DEBUG_PRINT) {
-                Log.d(TAG, json);
-            }
-
-            JSONObject jsonObject = new JSONObject(json);
-
-            Double neLat = 0.0, neLng = 0.0, swLat = 0.0, swLng = 0.0, lat = 0.0, lng = 0.0;
-            boolean found = false;
-            LatLngBounds bounds = null;
-            LatLngBounds viewport = null;
+        return getAddressesAsync(lat, lng, maxResult, languageCode).blockingGet();
+    }
 
-            if ("OK".equalsIgnoreCase(jsonObject.getString("status"))) {
-                JSONArray results = jsonObject.getJSONArray("results");
-                if (results.length() > 0) {
-                    for (int i = 0; i < results.length(); i++) {
-                        JSONObject result = results.getJSONObject(i);
+    /**
+     * Blocking version of {@link #getLocationInfoAsync(String, String)}
+     *
+     * @return the location info, or null if the service did not answer with an OK status
+     */
+    @Nullable
+    public LocationInfo getLocationInfo(String addressName, String languageCode) {
 
-                        if (result.has("geometry")) {
-                            JSONObject geometry = result.getJSONObject("geometry");
+        if (Looper.getMainLooper().equals(Looper.myLooper())) {
+            throw new IllegalStateException("Cannot run this method from UI thread");
+        }
 
-                            if (geometry.has("viewport")) {
-                                JSONObject viewPortJson = geometry.getJSONObject("viewport");
+        return getLocationInfoAsync(addressName, languageCode).blockingGet();
+    }
 
-                                if (viewPortJson.has("northeast")) {
-                                    JSONObject northeast = viewPortJson.getJSONObject("northeast");
-                                    neLat = northeast.getDouble("lat");
-                                    neLng = northeast.getDouble("lng");
-                                }
+    /**
+     * Reverse geocode without blocking any thread. Cache tiers are looked up first, then the provider is asked,
+     * and its request gets cancelled if every subscriber disposes before it finishes. Identical lookups in
+     * progress share the same request.
+     *
+     * @return a single that fails with {@link GeocoderError} when the service cannot resolve the location
+     */
+    public Single<List<Address>> getAddressesAsync(double lat, double lng, int maxResult, String languageCode) {
+        return cachedAddresses(lat, lng, maxResult, languageCode)
+                .switchIfEmpty(resolveAddresses(lat, lng, maxResult, languageCode, storedAddresses(lat, lng, maxResult, languageCode)))
+                .toSingle();
+    }
 
-                                if (viewPortJson.has("southwest")) {
-                                    JSONObject southwest = viewPortJson.getJSONObject("southwest");
-                                    swLat = southwest.getDouble("lat");
-                                    swLng = southwest.getDouble("lng");
-                                }
+    /**
+     * Asks the provider straight away, for callers that already saw every cache tier miss with
+     * {@link #getCachedAddressesAsync(double, double, int, String)}. The result is still cached and identical lookups
+     * in progress still share the request.
+     */
+    Single<List<Address>> requestAddressesAsync(double lat, double lng, int maxResult, String languageCode) {
+        return resolveAddresses(lat, lng, maxResult, languageCode, Maybe.<List<Address>>empty()).toSingle();
+    }
 
-                                viewport = new LatLngBounds(new LatLng(swLat, swLng), new LatLng(neLat, neLng));
-                            }
+    private Maybe<List<Address>> resolveAddresses(double lat, double lng, final int maxResult, final String languageCode,
+                                                  Maybe<List<Address>> stored) {
+        final long cell = cellOf(lat, lng);
+
+        Maybe<List<Address>> network = provider.getAddresses(lat, lng, maxResult, languageCode)
+                                               .doOnSuccess(
+                                                       new Consumer<List<Address>>() {
+                                                           @Override
+                                                           public void accept(List<Address> addresses) {
+                                                               if (null != reverseCache) {
+                                                                   reverseCache.put(cell, maxResult, languageCode, addresses);
+                                                               }
+                                                               if (null != diskCache) {
+                                                                   diskCache.putAddresses(cell, cellPrecision(), maxResult, languageCode, addresses);
+                                                               }
+                                                           }
+                                                       })
+                                               .toMaybe();
+
+        return pendingReverse.join(new ReverseGeocodeKey(cell, languageCode, maxResult), stored.switchIfEmpty(network));
+    }
 
-                            if (geometry.has("location")) {
-                                JSONObject location = geometry.getJSONObject("location");
-                                lat = location.getDouble("lat");
-                                lng = location.getDouble("lng");
-                            }
+    /**
+     * Looks the location up on the cache tiers only, never asking the provider
+     *
+     * @return a maybe completing empty if no tier has the location
+     */
+    public Maybe<List<Address>> getCachedAddressesAsync(double lat, double lng, int maxResult, String languageCode) {
+        return cachedAddresses(lat, lng, maxResult, languageCode).switchIfEmpty(storedAddresses(lat, lng, maxResult, languageCode));
+    }
 
-                            if (geometry.has("bounds")) {
-                                JSONObject regionJson = geometry.getJSONObject("bounds");
-
-                                if (regionJson.has("northeast")) {
-                                    JSONObject northeast = regionJson.getJSONObject("northeast");
-                                    neLat = northeast.getDouble("lat");
-                                    neLng = northeast.getDouble("lng");
-                                }
-
-                                if (regionJson.has("southwest")) {
-                                    JSONObject southwest = regionJson.getJSONObject("southwest");
-                                    swLat = southwest.getDouble("lat");
-                                    swLng = southwest.getDouble("lng");
-                                }
-                                bounds = new LatLngBounds(new LatLng(swLat, swLng), new LatLng(neLat, neLng));
-                            }
-                            found = true;
+    private Maybe<List<Address>> cachedAddresses(final double lat, final double lng, final int maxResult, final String languageCode) {
+        final long cell = cellOf(lat, lng);
+        return Maybe.fromCallable(
+                new Callable<List<Address>>() {
+                    @Override
+                    public List<Address> call() {
+                        if (null == reverseCache) {
+                            return null;
                         }
-
-                        if (found) {
-                            break;
+                        List<Address> addresses = reverseCache.get(cell, maxResult, languageCode);
+                        if (DEBUG_PRINT && null != addresses) {
+                            Log.d(TAG, "Geocoder cache hit for " + lat + "," + lng);
                         }
+                        return addresses;
                     }
-                }
+                });
+    }
 
-                if (null == viewport) {
-                    if (null != bounds) {
-                        viewport = bounds;
-                    } else {
-                        throw new GeocoderError("Invalid geocoder response? Or did not process them all!");
+    private Maybe<List<Address>> storedAddresses(final double lat, final double lng, final int maxResult, final String languageCode) {
+        if (null == diskCache) {
+            return Maybe.empty();
+        }
+        final long cell = cellOf(lat, lng);
+        return Maybe.fromCallable(
+                new Callable<List<Address>>() {
+                    @Override
+                    public List<Address> call() {
+                        List<Address> addresses = diskCache.getAddresses(cell, cellPrecision(), maxResult, languageCode);
+                        if (null != addresses && null != reverseCache) {
+                            reverseCache.put(cell, maxResult, languageCode, addresses);
+                        }
+                        return addresses;
                     }
-                }
-
-                locationInfo = new LocationInfo(viewport, new LatLng(lat, lng), bounds);
-            }
+                }).subscribeOn(Schedulers.io());
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Error calling Google geocode webservice.", e);
-            throw new GeocoderError("Error calling Google geocode webservice. " + e.getMessage());
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
-            throw new GeocoderError("Error parsing Google geocode webservice response. " + e.getMessage());
+    /**
+     * Forward geocode without blocking any thread, same threading and cancellation rules as
+     * {@link #getAddressesAsync(double, double, int, String)} apply.
+     *
+     * @return a maybe completing empty if the service did not answer with an OK status
+     */
+    public Maybe<LocationInfo> getLocationInfoAsync(final String addressName, final String languageCode) {
+        Maybe<LocationInfo> cached = Maybe.fromCallable(
+                new Callable<LocationInfo>() {
+                    @Override
+                    public LocationInfo call() {
+                        if (null == forwardCache) {
+                            return null;
+                        }
+                        LocationInfo info = forwardCache.get(addressName, languageCode);
+                        if (DEBUG_PRINT && null != info) {
+                            Log.d(TAG, "Geocoder cache hit for " + addressName);
+                        }
+                        return info;
+                    }
+                });
+
+        Maybe<LocationInfo> stored = Maybe.empty();
+        if (null != diskCache) {
+            stored = Maybe.fromCallable(
+                    new Callable<LocationInfo>() {
+                        @Override
+                        public LocationInfo call() {
+                            LocationInfo info = diskCache.getLocationInfo(addressName, languageCode);
+                            if (null != info && null != forwardCache) {
+                                forwardCache.put(addressName, languageCode, info);
+                            }
+                            return info;
+                        }
+                    }).subscribeOn(Schedulers.io());
         }
 
-        return locationInfo;
+        Maybe<LocationInfo> network = provider.getLocationInfo(addressName, languageCode)
+                                              .doOnSuccess(
+                                                      new Consumer<LocationInfo>() {
+                                                          @Override
+                                                          public void accept(LocationInfo info) {
+                                                              if (null != forwardCache) {
+                                                                  forwardCache.put(addressName, languageCode, info);
+                                                              }
+                                                              if (null != diskCache) {
+                                                                  diskCache.putLocationInfo(addressName, languageCode, info);
+                                                              }
+                                                          }
+                                                      });
+
+        return cached.switchIfEmpty(
+                pendingForward.join(languageCode + '|' + ForwardGeocodeCache.normalize(addressName), stored.switchIfEmpty(network)));
     }
 
     public static class LocationInfo {
@@ -308,6 +414,7 @@ public class Geocoder {
         private LatLng       latLng;
 
         public LocationInfo(@NonNull LatLngBounds viewPort, LatLng latLng, @Nullable LatLngBounds bounds) {
+            this.latLngViewPort = viewPort;
             this.latLngBounds = bounds;
             this.latLng = latLng;
         }
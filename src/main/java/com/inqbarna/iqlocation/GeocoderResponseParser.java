@@ -0,0 +1,338 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pull parser for the geocode webservice responses. It reads straight from the response stream, without
+ * building the whole json tree, and stops as soon as the requested results are complete.
+ */
+final class GeocoderResponseParser {
+
+    private static final String STATUS_OK = "OK";
+
+    private static final int TYPE_LOCALITY       = 1;
+    private static final int TYPE_SUB_LOCALITY   = 1 << 1;
+    private static final int TYPE_STREET_NUMBER  = 1 << 2;
+    private static final int TYPE_ROUTE          = 1 << 3;
+    private static final int TYPE_COUNTRY        = 1 << 4;
+    private static final int TYPE_ADMIN_LEVEL_1  = 1 << 5;
+    private static final int TYPE_ADMIN_LEVEL_2  = 1 << 6;
+    private static final int TYPE_ADMIN_LEVEL_3  = 1 << 7;
+    private static final int TYPE_ADMIN_LEVEL_4  = 1 << 8;
+    private static final int TYPE_POSTAL_CODE    = 1 << 9;
+
+    private static final int ADMIN_LEVELS = 4;
+
+    private static final Map<String, Integer> COMPONENT_TYPES = new HashMap<>();
+
+    static {
+        COMPONENT_TYPES.put("locality", TYPE_LOCALITY);
+        COMPONENT_TYPES.put("sublocality", TYPE_SUB_LOCALITY);
+        COMPONENT_TYPES.put("street_number", TYPE_STREET_NUMBER);
+        COMPONENT_TYPES.put("route", TYPE_ROUTE);
+        COMPONENT_TYPES.put("street_name", TYPE_ROUTE);
+        COMPONENT_TYPES.put("country", TYPE_COUNTRY);
+        COMPONENT_TYPES.put("administrative_area_level_1", TYPE_ADMIN_LEVEL_1);
+        COMPONENT_TYPES.put("administrative_area_level_2", TYPE_ADMIN_LEVEL_2);
+        COMPONENT_TYPES.put("administrative_area_level_3", TYPE_ADMIN_LEVEL_3);
+        COMPONENT_TYPES.put("administrative_area_level_4", TYPE_ADMIN_LEVEL_4);
+        COMPONENT_TYPES.put("postal_code", TYPE_POSTAL_CODE);
+    }
+
+    private GeocoderResponseParser() {
+    }
+
+    /**
+     * Results are only given along with an OK status, so once <code>maxResult</code> of them are read the
+     * remaining of the response is not even looked at.
+     *
+     * @throws GeocoderError if the service answered with a status other than OK
+     */
+    static List<Address> parseAddresses(JsonReader reader, int maxResult) throws IOException {
+        List<Address> addresses = new ArrayList<>(Math.max(0, Math.min(maxResult, 10)));
+        String status = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("results".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (addresses.size() >= maxResult) {
+                        return addresses;
+                    }
+                    addresses.add(readAddress(reader));
+                    if (addresses.size() >= maxResult) {
+                        return addresses;
+                    }
+                }
+                reader.endArray();
+            } else if ("status".equals(name)) {
+                status = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!STATUS_OK.equalsIgnoreCase(status)) {
+            throw new GeocoderError(String.valueOf(status));
+        }
+        return addresses;
+    }
+
+    /**
+     * @return the info of the first result having geometry, or null if the service answered with a status other than OK
+     * @throws GeocoderError if the response has no usable viewport
+     */
+    @Nullable
+    static Geocoder.LocationInfo parseLocationInfo(JsonReader reader) throws IOException {
+        String status = null;
+        Geometry geometry = null;
+
+        reader.beginObject();
+        while (reader.hasNext() && null == geometry) {
+            final String name = reader.nextName();
+            if ("results".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext() && null == geometry) {
+                    geometry = readResultGeometry(reader);
+                }
+                if (null == geometry) {
+                    reader.endArray();
+                }
+            } else if ("status".equals(name)) {
+                status = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        if (null == geometry) {
+            if (!STATUS_OK.equalsIgnoreCase(status)) {
+                return null;
+            }
+            throw new GeocoderError("Invalid geocoder response? Or did not process them all!");
+        }
+
+        LatLngBounds viewport = geometry.viewport;
+        if (null == viewport) {
+            if (null != geometry.bounds) {
+                viewport = geometry.bounds;
+            } else {
+                throw new GeocoderError("Invalid geocoder response? Or did not process them all!");
+            }
+        }
+        return new Geocoder.LocationInfo(viewport, null != geometry.location ? geometry.location : new LatLng(0, 0), geometry.bounds);
+    }
+
+    private static Address readAddress(JsonReader reader) throws IOException {
+        Address addr = new Address(Locale.getDefault());
+        String streetNumber = null;
+        String route = null;
+        String[] adminAreas = new String[ADMIN_LEVELS];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("geometry".equals(name)) {
+                readAddressGeometry(reader, addr);
+            } else if ("address_components".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String longName = null;
+                    String shortName = null;
+                    int types = 0;
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        final String field = reader.nextName();
+                        if ("long_name".equals(field)) {
+                            longName = reader.nextString();
+                        } else if ("short_name".equals(field)) {
+                            shortName = reader.nextString();
+                        } else if ("types".equals(field)) {
+                            types = readComponentTypes(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+
+                    if ((types & TYPE_LOCALITY) != 0) {
+                        addr.setLocality(longName);
+                    }
+                    if ((types & TYPE_SUB_LOCALITY) != 0) {
+                        addr.setSubLocality(longName);
+                    }
+                    if ((types & TYPE_STREET_NUMBER) != 0) {
+                        streetNumber = longName;
+                    }
+                    if ((types & TYPE_ROUTE) != 0) {
+                        route = longName;
+                    }
+                    if ((types & TYPE_COUNTRY) != 0) {
+                        addr.setCountryCode(shortName);
+                        addr.setCountryName(longName);
+                    }
+                    if ((types & TYPE_ADMIN_LEVEL_1) != 0) {
+                        adminAreas[0] = longName;
+                    }
+                    if ((types & TYPE_ADMIN_LEVEL_2) != 0) {
+                        adminAreas[1] = longName;
+                    }
+                    if ((types & TYPE_ADMIN_LEVEL_3) != 0) {
+                        adminAreas[2] = longName;
+                    }
+                    if ((types & TYPE_ADMIN_LEVEL_4) != 0) {
+                        adminAreas[3] = longName;
+                    }
+                    if ((types & TYPE_POSTAL_CODE) != 0) {
+                        addr.setPostalCode(longName);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // most significant admin area known goes to admin area, the next one to sub admin area
+        int found = 0;
+        for (int i = 0; i < ADMIN_LEVELS && found < 2; i++) {
+            if (null != adminAreas[i]) {
+                if (found == 0) {
+                    addr.setAdminArea(adminAreas[i]);
+                } else {
+                    addr.setSubAdminArea(adminAreas[i]);
+                }
+                found++;
+            }
+        }
+
+        if (null != route && null != streetNumber) {
+            addr.setAddressLine(0, route + " " + streetNumber);
+        }
+        return addr;
+    }
+
+    private static int readComponentTypes(JsonReader reader) throws IOException {
+        int types = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Integer type = COMPONENT_TYPES.get(reader.nextString());
+            if (null != type) {
+                types |= type;
+            }
+        }
+        reader.endArray();
+        return types;
+    }
+
+    private static void readAddressGeometry(JsonReader reader, Address addr) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (Geocoder.LOCATION_TYPE.equals(name)) {
+                Bundle bundle = new Bundle();
+                bundle.putString(Geocoder.LOCATION_TYPE, reader.nextString());
+                addr.setExtras(bundle);
+            } else if ("location".equals(name)) {
+                LatLng location = readLatLng(reader);
+                addr.setLatitude(location.latitude);
+                addr.setLongitude(location.longitude);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    @Nullable
+    private static Geometry readResultGeometry(JsonReader reader) throws IOException {
+        Geometry geometry = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                geometry = new Geometry();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String field = reader.nextName();
+                    if ("viewport".equals(field)) {
+                        geometry.viewport = readBounds(reader);
+                    } else if ("bounds".equals(field)) {
+                        geometry.bounds = readBounds(reader);
+                    } else if ("location".equals(field)) {
+                        geometry.location = readLatLng(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return geometry;
+    }
+
+    private static LatLngBounds readBounds(JsonReader reader) throws IOException {
+        LatLng northeast = null;
+        LatLng southwest = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("northeast".equals(name)) {
+                northeast = readLatLng(reader);
+            } else if ("southwest".equals(name)) {
+                southwest = readLatLng(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new LatLngBounds(null != southwest ? southwest : new LatLng(0, 0), null != northeast ? northeast : new LatLng(0, 0));
+    }
+
+    private static LatLng readLatLng(JsonReader reader) throws IOException {
+        double lat = 0;
+        double lng = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if ("lat".equals(name)) {
+                lat = reader.nextDouble();
+            } else if ("lng".equals(name)) {
+                lng = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new LatLng(lat, lng);
+    }
+
+    private static final class Geometry {
+        LatLngBounds viewport;
+        LatLngBounds bounds;
+        LatLng       location;
+    }
+}
@@ -0,0 +1,26 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+
+import java.util.List;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+/**
+ * Source of geocoding results behind {@link Geocoder}. Caching and coalescing of identical requests are
+ * handled by the geocoder, so implementations just resolve every request they are given.
+ */
+public interface GeocodingProvider {
+
+    /**
+     * @return the addresses near the given coordinates, failing with {@link com.inqbarna.iqlocation.util.GeocoderError}
+     * when they cannot be resolved
+     */
+    Single<List<Address>> getAddresses(double lat, double lng, int maxResults, String languageCode);
+
+    /**
+     * @return the place info, completing empty when the name is unknown to this provider
+     */
+    Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode);
+}
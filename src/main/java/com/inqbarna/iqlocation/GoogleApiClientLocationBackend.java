@@ -0,0 +1,104 @@
+package com.inqbarna.iqlocation;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * Backend on the {@link com.google.android.gms.location.FusedLocationProviderApi} over the shared
+ * {@link GoogleApiClient}, updates are delivered on the main thread once the client connects.
+ */
+public class GoogleApiClientLocationBackend implements LocationBackend, GoogleApiClient.ConnectionCallbacks {
+
+    private final ApiClientManager clientManager;
+    private final GoogleApiClient  apiClient;
+
+    private volatile Callbacks callbacks;
+
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            final Callbacks current = callbacks;
+            if (null != current) {
+                current.onLocationsChanged(result.getLocations());
+            }
+        }
+    };
+
+    public GoogleApiClientLocationBackend(@NonNull Context context) {
+        clientManager = ApiClientManager.get(context);
+        apiClient = clientManager.getClient();
+    }
+
+    @Override
+    public synchronized void start(@NonNull Callbacks callbacks) {
+        if (null != this.callbacks) {
+            return;
+        }
+        this.callbacks = callbacks;
+        clientManager.acquire(this);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (null == callbacks) {
+            return;
+        }
+        callbacks = null;
+        if (apiClient.isConnected()) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(apiClient, locationCallback);
+        }
+        clientManager.release(this);
+    }
+
+    @Override
+    public boolean isReady() {
+        return null != callbacks && apiClient.isConnected();
+    }
+
+    @Override
+    public boolean requiresLocationPermission() {
+        return true;
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void requestLastLocation() {
+        final Callbacks current = callbacks;
+        if (null != current && apiClient.isConnected()) {
+            //noinspection MissingPermission
+            current.onLocationChanged(LocationServices.FusedLocationApi.getLastLocation(apiClient));
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void requestUpdates(@NonNull LocationRequest request) {
+        if (isReady()) {
+            //noinspection MissingPermission
+            LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, request, locationCallback, Looper.getMainLooper());
+        }
+    }
+
+    @Override
+    public void onConnected(@Nullable Bundle bundle) {
+        final Callbacks current = callbacks;
+        if (null != current) {
+            current.onReady();
+        }
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+
+    }
+}
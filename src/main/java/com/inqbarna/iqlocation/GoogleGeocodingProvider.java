@@ -0,0 +1,252 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.JsonReader;
+import android.util.Log;
+import android.util.MalformedJsonException;
+
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.MaybeOnSubscribe;
+import io.reactivex.MaybeSource;
+import io.reactivex.Single;
+import io.reactivex.functions.Cancellable;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Google geocode webservice provider. Requests are enqueued on the http client dispatcher, and cancelled when
+ * the subscriber disposes before they finish.
+ */
+public class GoogleGeocodingProvider implements GeocodingProvider {
+
+    private static final String TAG = "IQGeocoder";
+
+    private static final int  MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MILLIS    = 5 * 60 * 1000; // 5 minutes in millis
+
+    private final OkHttpClient httpClient;
+
+    public GoogleGeocodingProvider(@NonNull OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Builds a client keeping connections alive and allowing HTTP/2, which the https endpoints negotiate over TLS
+     *
+     * @param base client whose connection pool and dispatcher will be shared, or null to create new ones
+     */
+    public static OkHttpClient newHttpClient(@Nullable OkHttpClient base, long connectTimeoutMillis, long readTimeoutMillis) {
+        OkHttpClient.Builder clientBuilder;
+        if (null != base) {
+            clientBuilder = base.newBuilder();
+        } else {
+            clientBuilder = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        return clientBuilder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                            .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                            .retryOnConnectionFailure(true)
+                            .build();
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public Single<List<Address>> getAddresses(final double lat, final double lng, final int maxResults, final String languageCode) {
+        return Maybe.defer(
+                new Callable<MaybeSource<List<Address>>>() {
+                    @Override
+                    public MaybeSource<List<Address>> call() {
+                        return enqueue(
+                                reverseRequest(lat, lng, languageCode),
+                                new ResponseReader<List<Address>>() {
+                                    @Override
+                                    public List<Address> read(Response response) {
+                                        return readAddresses(response, maxResults);
+                                    }
+                                });
+                    }
+                }).toSingle();
+    }
+
+    @Override
+    public Maybe<Geocoder.LocationInfo> getLocationInfo(final String addressName, final String languageCode) {
+        return Maybe.defer(
+                new Callable<MaybeSource<Geocoder.LocationInfo>>() {
+                    @Override
+                    public MaybeSource<Geocoder.LocationInfo> call() {
+                        return enqueue(
+                                forwardRequest(addressName, languageCode),
+                                new ResponseReader<Geocoder.LocationInfo>() {
+                                    @Override
+                                    public Geocoder.LocationInfo read(Response response) {
+                                        return readLocationInfo(response);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private Request reverseRequest(double lat, double lng, String languageCode) {
+        String address = String.format(
+                Locale.ENGLISH, "https://maps.googleapis.com/maps/api/geocode/json?latlng=%1$f,%2$f&sensor=false&language=" + languageCode,
+                lat, lng);
+
+        if (Geocoder.DEBUG_PRINT) {
+            Log.d(TAG, "Geocoder request: " + address);
+        }
+
+        return new Request.Builder().get().url(HttpUrl.parse(address)).build();
+    }
+
+    private Request forwardRequest(String addressName, String languageCode) {
+        try {
+            addressName = URLEncoder.encode(addressName, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new GeocoderError("Failed encoding place", e);
+        }
+
+        String address = "https://maps.googleapis.com/maps/api/geocode/json?address=" + addressName + "&sensor=false&language=" + languageCode;
+        if (Geocoder.DEBUG_PRINT) {
+            Log.d(TAG, "Will request: " + address);
+        }
+
+        return new Request.Builder().get().url(HttpUrl.parse(address)).build();
+    }
+
+    private interface ResponseReader<T> {
+        @Nullable
+        T read(Response response);
+    }
+
+    private <T> Maybe<T> enqueue(final Request request, final ResponseReader<T> reader) {
+        return Maybe.create(
+                new MaybeOnSubscribe<T>() {
+                    @Override
+                    public void subscribe(final MaybeEmitter<T> emitter) {
+                        final Call call = httpClient.newCall(request);
+                        emitter.setCancellable(
+                                new Cancellable() {
+                                    @Override
+                                    public void cancel() {
+                                        call.cancel();
+                                    }
+                                });
+
+                        call.enqueue(
+                                new Callback() {
+                                    @Override
+                                    public void onFailure(Call call, IOException e) {
+                                        if (!emitter.isDisposed()) {
+                                            emitter.onError(callError(e));
+                                        }
+                                    }
+
+                                    @Override
+                                    public void onResponse(Call call, Response response) {
+                                        final T result;
+                                        try {
+                                            result = reader.read(response);
+                                        } catch (GeocoderError error) {
+                                            if (!emitter.isDisposed()) {
+                                                emitter.onError(error);
+                                            }
+                                            return;
+                                        }
+
+                                        if (null != result) {
+                                            emitter.onSuccess(result);
+                                        } else {
+                                            emitter.onComplete();
+                                        }
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private static GeocoderError callError(IOException e) {
+        Log.e(TAG, "Error calling Google geocode webservice.", e);
+        return new GeocoderError("Error calling Google geocode webservice. " + e.getMessage(), null); // because somehow stacktrace not printing
+    }
+
+    private static List<Address> readAddresses(Response response, int maxResult) {
+        try {
+            List<Address> addresses = GeocoderResponseParser.parseAddresses(newReader(response), maxResult);
+            if (Geocoder.DEBUG_PRINT) {
+                Log.d(TAG, "Geocoder parsed: " + addresses);
+            }
+            return addresses;
+        } catch (MalformedJsonException e) {
+            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
+            throw new GeocoderError("Error parsing Google geocode webservice response.", e);
+        } catch (IOException e) {
+            throw callError(e);
+        } catch (IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
+            throw new GeocoderError("Error parsing Google geocode webservice response.", e);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unknown error in geocoder", e);
+            throw new GeocoderError("Unknown error in geocoder" + e.getMessage(), null);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Nullable
+    private static Geocoder.LocationInfo readLocationInfo(Response response) {
+        try {
+            Geocoder.LocationInfo info = GeocoderResponseParser.parseLocationInfo(newReader(response));
+            if (Geocoder.DEBUG_PRINT) {
+                Log.d(TAG, "Geocoder parsed: " + info);
+            }
+            return info;
+        } catch (MalformedJsonException e) {
+            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
+            throw new GeocoderError("Error parsing Google geocode webservice response. " + e.getMessage());
+        } catch (IOException e) {
+            throw callError(e);
+        } catch (IllegalStateException | NumberFormatException e) {
+            Log.e(TAG, "Error parsing Google geocode webservice response.", e);
+            throw new GeocoderError("Error parsing Google geocode webservice response. " + e.getMessage());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unknown error in geocoder", e);
+            throw new GeocoderError("Unknown error in geocoder" + e.getMessage(), null);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static JsonReader newReader(Response response) throws IOException {
+        final ResponseBody body = response.body();
+        if (null == body) {
+            throw new IOException("Empty response, code " + response.code());
+        }
+        return new JsonReader(body.charStream());
+    }
+}
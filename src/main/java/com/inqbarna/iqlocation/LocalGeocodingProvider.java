@@ -0,0 +1,92 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.inqbarna.iqlocation.offline.Place;
+import com.inqbarna.iqlocation.offline.PlaceIndex;
+import com.inqbarna.iqlocation.util.Geodesy;
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+/**
+ * Offline provider answering from a {@link PlaceIndex}, precision is that of the indexed places so it is suited
+ * for city level lookups. Results are computed on the subscribing thread, no network is involved.
+ */
+public class LocalGeocodingProvider implements GeocodingProvider {
+
+    public static final double DEFAULT_MAX_DISTANCE_METERS = 25 * 1000; // 25 km
+
+    /**
+     * Same status the webservice gives when nothing is found
+     */
+    public static final String STATUS_ZERO_RESULTS = "ZERO_RESULTS";
+
+    private static final float MIN_VIEWPORT_RADIUS = 1000;
+
+    private final PlaceIndex index;
+    private final double     maxDistanceMeters;
+
+    public LocalGeocodingProvider(@NonNull PlaceIndex index) {
+        this(index, DEFAULT_MAX_DISTANCE_METERS);
+    }
+
+    public LocalGeocodingProvider(@NonNull PlaceIndex index, double maxDistanceMeters) {
+        this.index = index;
+        this.maxDistanceMeters = maxDistanceMeters;
+    }
+
+    @Override
+    public Single<List<Address>> getAddresses(final double lat, final double lng, final int maxResults, String languageCode) {
+        return Single.fromCallable(
+                new Callable<List<Address>>() {
+                    @Override
+                    public List<Address> call() {
+                        int[] ordinals = new int[Math.max(0, maxResults)];
+                        final int count = index.nearest(lat, lng, maxDistanceMeters, ordinals);
+                        if (count == 0 && maxResults > 0) {
+                            throw new GeocoderError(STATUS_ZERO_RESULTS);
+                        }
+
+                        List<Address> addresses = new ArrayList<>(count);
+                        final Locale locale = Locale.getDefault();
+                        for (int i = 0; i < count; i++) {
+                            addresses.add(index.get(ordinals[i]).toAddress(locale));
+                        }
+                        return addresses;
+                    }
+                });
+    }
+
+    @Override
+    public Maybe<Geocoder.LocationInfo> getLocationInfo(final String addressName, String languageCode) {
+        return Maybe.fromCallable(
+                new Callable<Geocoder.LocationInfo>() {
+                    @Override
+                    public Geocoder.LocationInfo call() {
+                        final int ordinal = index.findByName(addressName);
+                        if (ordinal < 0) {
+                            return null;
+                        }
+
+                        final Place place = index.get(ordinal);
+                        final double radius = Math.max(MIN_VIEWPORT_RADIUS, place.getRadius());
+                        final double dLat = Geodesy.latitudeDelta(radius);
+                        final double dLng = Geodesy.longitudeDelta(place.getLatitude(), radius);
+                        LatLngBounds viewport = new LatLngBounds(
+                                new LatLng(place.getLatitude() - dLat, place.getLongitude() - dLng),
+                                new LatLng(place.getLatitude() + dLat, place.getLongitude() + dLng));
+                        return new Geocoder.LocationInfo(viewport, new LatLng(place.getLatitude(), place.getLongitude()), null);
+                    }
+                });
+    }
+}
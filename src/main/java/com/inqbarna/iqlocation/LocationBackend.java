@@ -0,0 +1,65 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.location.LocationRequest;
+
+import java.util.List;
+
+/**
+ * Source of location updates behind {@link LocationHelper}. The helper decides when updates are needed and which
+ * request to ask for, implementations just bridge them to the platform. An instance serves a single helper.
+ *
+ * @see GoogleApiClientLocationBackend
+ * @see FusedLocationClientBackend
+ * @see ReplayLocationBackend
+ */
+public interface LocationBackend {
+
+    interface Callbacks {
+
+        /**
+         * Updates can be requested from now on, called on any thread
+         */
+        void onReady();
+
+        /**
+         * @param location last known location as asked with {@link #requestLastLocation()}, null if none is known
+         */
+        void onLocationChanged(@Nullable Location location);
+
+        /**
+         * @param locations new locations, oldest first, more than one when the request allows batching them
+         */
+        void onLocationsChanged(@NonNull List<Location> locations);
+    }
+
+    /**
+     * Acquires whatever is needed to request updates, {@link Callbacks#onReady()} is called once done
+     */
+    void start(@NonNull Callbacks callbacks);
+
+    /**
+     * Removes requested updates and releases what {@link #start(Callbacks)} acquired
+     */
+    void stop();
+
+    boolean isReady();
+
+    /**
+     * @return whether updates come from the device location, so the location permission and settings must allow it
+     */
+    boolean requiresLocationPermission();
+
+    /**
+     * Delivers the last known location through {@link Callbacks#onLocationChanged(Location)}, may be null
+     */
+    void requestLastLocation();
+
+    /**
+     * Requests updates, replacing the previous request if any
+     */
+    void requestUpdates(@NonNull LocationRequest request);
+}
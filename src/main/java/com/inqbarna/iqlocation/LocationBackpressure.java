@@ -0,0 +1,67 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+
+/**
+ * How locations are held for a subscriber consuming them slower than they arrive, every strategy keeps a bounded
+ * number of them.
+ *
+ * @see LocationHelper#getLocationFlowable(LocationBackpressure)
+ */
+public abstract class LocationBackpressure {
+
+    private static final LocationBackpressure LATEST = new LocationBackpressure() {
+        @Override
+        Flowable<Location> apply(Observable<Location> locations) {
+            return locations.toFlowable(BackpressureStrategy.LATEST);
+        }
+    };
+
+    private LocationBackpressure() {
+    }
+
+    /**
+     * Only the most recent location is kept until requested
+     */
+    public static LocationBackpressure latest() {
+        return LATEST;
+    }
+
+    /**
+     * Up to the given number of locations are kept, the oldest one is dropped to make room for a new one
+     */
+    public static LocationBackpressure dropOldest(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        return new LocationBackpressure() {
+            @Override
+            Flowable<Location> apply(Observable<Location> locations) {
+                return locations.toFlowable(BackpressureStrategy.MISSING)
+                                .onBackpressureBuffer(capacity, null, BackpressureOverflowStrategy.DROP_OLDEST);
+            }
+        };
+    }
+
+    /**
+     * At most a location per period is delivered, the latest one of the period, and it is kept until requested
+     */
+    public static LocationBackpressure sampled(final long period, final TimeUnit unit) {
+        return new LocationBackpressure() {
+            @Override
+            Flowable<Location> apply(Observable<Location> locations) {
+                return locations.sample(period, unit)
+                                .toFlowable(BackpressureStrategy.LATEST);
+            }
+        };
+    }
+
+    abstract Flowable<Location> apply(Observable<Location> locations);
+}
@@ -0,0 +1,196 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.location.LocationRequest;
+import com.inqbarna.iqlocation.util.Geodesy;
+
+/**
+ * Location updates a subscriber needs. A {@link LocationHelper} runs a single request that satisfies the strictest
+ * of the active demands, and then spaces out the updates each subscriber receives to match its own demand.
+ */
+public final class LocationDemand {
+
+    private final long  intervalMillis;
+    private final long  fastestIntervalMillis;
+    private final int   priority;
+    private final float smallestDisplacementMeters;
+    private final long  maxWaitTimeMillis;
+
+    public static class Builder {
+        private long  intervalMillis        = LocationHelper.LONGER_INTERVAL_MILLIS;
+        private long  fastestIntervalMillis = -1;
+        private int   priority              = LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+        private float smallestDisplacementMeters;
+        private long  maxWaitTimeMillis;
+
+        public Builder setInterval(long millis) {
+            this.intervalMillis = millis;
+            return this;
+        }
+
+        /**
+         * Minimum time between two updates delivered to this subscriber, defaults to the interval
+         */
+        public Builder setFastestInterval(long millis) {
+            this.fastestIntervalMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param priority one of the {@link LocationRequest} priorities
+         */
+        public Builder setPriority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public Builder setSmallestDisplacement(float meters) {
+            this.smallestDisplacementMeters = meters;
+            return this;
+        }
+
+        /**
+         * How long locations may be held to be delivered in batches, zero for no preference. A wait not longer than the
+         * interval does not batch anything, so it counts as no preference too. Batching is shared by the whole request,
+         * so with several demands the shortest non zero wait applies to every subscriber.
+         */
+        public Builder setMaxWaitTime(long millis) {
+            this.maxWaitTimeMillis = millis;
+            return this;
+        }
+
+        public LocationDemand build() {
+            return new LocationDemand(intervalMillis, fastestIntervalMillis < 0 ? intervalMillis : fastestIntervalMillis, priority, smallestDisplacementMeters,
+                                      maxWaitTimeMillis);
+        }
+    }
+
+    private LocationDemand(long intervalMillis, long fastestIntervalMillis, int priority, float smallestDisplacementMeters, long maxWaitTimeMillis) {
+        this.intervalMillis = intervalMillis;
+        this.fastestIntervalMillis = Math.min(intervalMillis, fastestIntervalMillis);
+        this.priority = priority;
+        this.smallestDisplacementMeters = smallestDisplacementMeters;
+        this.maxWaitTimeMillis = maxWaitTimeMillis > intervalMillis ? maxWaitTimeMillis : 0;
+    }
+
+    public static LocationDemand fromRequest(@NonNull LocationRequest request) {
+        return new LocationDemand(request.getInterval(), request.getFastestInterval(), request.getPriority(), request.getSmallestDisplacement(),
+                                  maxWaitTime(request));
+    }
+
+    /**
+     * Play services reports the interval as the max wait time of requests that never set one, so only a longer wait
+     * means batching was asked for
+     *
+     * @return the max wait time of the request, zero when it does not batch
+     */
+    static long maxWaitTime(@NonNull LocationRequest request) {
+        final long maxWaitTime = request.getMaxWaitTime();
+        return maxWaitTime > request.getInterval() ? maxWaitTime : 0;
+    }
+
+    public long getInterval() {
+        return intervalMillis;
+    }
+
+    public long getFastestInterval() {
+        return fastestIntervalMillis;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public float getSmallestDisplacement() {
+        return smallestDisplacementMeters;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTimeMillis;
+    }
+
+    /**
+     * @return a demand satisfying both, priorities are ranked by their value, the lower the more accurate. A zero max
+     * wait time states no preference, so the shortest non zero one is kept and batching stays enabled if any of them
+     * asks for it.
+     */
+    public LocationDemand strictest(@NonNull LocationDemand other) {
+        return new LocationDemand(
+                Math.min(intervalMillis, other.intervalMillis),
+                Math.min(fastestIntervalMillis, other.fastestIntervalMillis),
+                Math.min(priority, other.priority),
+                Math.min(smallestDisplacementMeters, other.smallestDisplacementMeters),
+                shortestWait(maxWaitTimeMillis, other.maxWaitTimeMillis));
+    }
+
+    private static long shortestWait(long millis, long otherMillis) {
+        if (millis <= 0) {
+            return otherMillis;
+        }
+        return otherMillis <= 0 ? millis : Math.min(millis, otherMillis);
+    }
+
+    /**
+     * @return a new request asking for this demand
+     */
+    public LocationRequest toRequest() {
+        return LocationRequest.create()
+                              .setInterval(intervalMillis)
+                              .setFastestInterval(fastestIntervalMillis)
+                              .setPriority(priority)
+                              .setSmallestDisplacement(smallestDisplacementMeters)
+                              .setMaxWaitTime(maxWaitTimeMillis);
+    }
+
+    /**
+     * @param last last location delivered to the subscriber, if any
+     * @return whether the candidate is far enough, in time and space, from the last delivered location
+     */
+    public boolean accepts(@Nullable Location last, @NonNull Location candidate) {
+        if (null == last) {
+            return true;
+        }
+        if (candidate.getTime() - last.getTime() < fastestIntervalMillis) {
+            return false;
+        }
+        return smallestDisplacementMeters <= 0
+                || Geodesy.equirectangular(last.getLatitude(), last.getLongitude(), candidate.getLatitude(), candidate.getLongitude())
+                   >= smallestDisplacementMeters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        LocationDemand that = (LocationDemand) o;
+        return intervalMillis == that.intervalMillis
+                && fastestIntervalMillis == that.fastestIntervalMillis
+                && priority == that.priority
+                && Float.compare(that.smallestDisplacementMeters, smallestDisplacementMeters) == 0
+                && maxWaitTimeMillis == that.maxWaitTimeMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (intervalMillis ^ (intervalMillis >>> 32));
+        result = 31 * result + (int) (fastestIntervalMillis ^ (fastestIntervalMillis >>> 32));
+        result = 31 * result + priority;
+        result = 31 * result + (smallestDisplacementMeters != +0.0f ? Float.floatToIntBits(smallestDisplacementMeters) : 0);
+        result = 31 * result + (int) (maxWaitTimeMillis ^ (maxWaitTimeMillis >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationDemand{interval=" + intervalMillis + ", fastestInterval=" + fastestIntervalMillis + ", priority=" + priority + ", smallestDisplacement="
+                + smallestDisplacementMeters + ", maxWaitTime=" + maxWaitTimeMillis + "}";
+    }
+}
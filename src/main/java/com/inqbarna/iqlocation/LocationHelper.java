@@ -9,75 +9,131 @@ import android.location.Address;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Build;
-import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.LocationSource;
+import com.inqbarna.iqlocation.filter.DedupFilter;
+import com.inqbarna.iqlocation.filter.LocationFilter;
+import com.inqbarna.iqlocation.filter.LocationFilters;
+import com.inqbarna.iqlocation.geofence.GeofenceEngine;
+import com.inqbarna.iqlocation.geofence.GeofenceEvent;
 import com.inqbarna.iqlocation.util.ErrorHandler;
 import com.inqbarna.iqlocation.util.GeocoderError;
+import com.inqbarna.iqlocation.util.RateLimiter;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOnSubscribe;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableSource;
 import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Action;
+import io.reactivex.functions.Cancellable;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 
 /**
  * Created by David García <david.garcia@inqbarna.com> on 26/11/14.
  */
-public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
+public class LocationHelper {
 
     private static final String TAG                     = "IQLocation";
     public static final  long   LONGER_INTERVAL_MILLIS  = 60 * 60 * 1000; // 60 minutes in millis
     public static final  long   FASTEST_INTERVAL_MILLIS = 60 * 1000; // 1 minute in millis
+    /**
+     * @deprecated liveness is not polled anymore, the client is disconnected when the last subscriber leaves
+     * after {@link #DEFAULT_DISCONNECT_DELAY_MILLIS}
+     */
+    @Deprecated
     public static final int CHECK_INTERVAL_SECS = 5;
+    public static final long DEFAULT_DISCONNECT_DELAY_MILLIS = 2 * 1000; // 2 seconds in millis
 
     private static boolean DEBUG = false;
 
-    private GoogleApiClient apiClient;
-    private Context         appContext;
+    private LocationBackend  backend;
+    private volatile boolean backendStarted;
+    private Context          appContext;
 
-    private       ArrayList<ObservableEmitter<? super Location>> emitters;
-    private       Observable<Location>                           observable;
-    private final LocationRequest                                locationRequest;
+    private final EmitterRegistry<Location> emitters = new EmitterRegistry<>();
+    private       Observable<Location>      observable;
+    private volatile Location               lastLocation;
+
+    private final    List<LocationDemand> demands = new ArrayList<>();
+    private volatile LocationRequest      activeRequest;
+    private final LocationRequest           locationRequest;
+
+    private final LocationBackend.Callbacks backendCallbacks = new LocationBackend.Callbacks() {
+        @Override
+        public void onReady() {
+            onBackendReady();
+        }
 
-    private LocationListener locationListener = new LocationListener() {
         @Override
         public void onLocationChanged(Location location) {
             dispatchNewLocation(location);
         }
+
+        @Override
+        public void onLocationsChanged(List<Location> locations) {
+            dispatchNewLocations(locations);
+        }
     };
 
-    private ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> sheduledTask;
-    private Scheduler rxScheduler = Schedulers.from(executorService);
+    private final Subject<List<Location>> batches       = PublishSubject.<List<Location>>create().toSerialized();
+    private final AtomicLong              wakeupCount   = new AtomicLong();
+    private final AtomicLong              batchFixCount = new AtomicLong();
+
+    private LocationFilter   filter;
+    private final AtomicLong filteredOutCount = new AtomicLong();
+
+    private long startedAtMillis;
+    private long timeToFirstFixMillis = -1;
+
+    private Scheduler       scheduler = Schedulers.from(Executors.newSingleThreadScheduledExecutor());
+    private Disposable      pendingDisconnect;
+    private long            disconnectDelayMillis = DEFAULT_DISCONNECT_DELAY_MILLIS;
     private ErrorHandler globalErrorWatch;
+    private Geocoder     geocoder;
+
+    // shared by every batch so together they keep to the rate
+    private final RateLimiter batchRateLimiter = new RateLimiter(BatchGeocoder.DEFAULT_REQUESTS_PER_SECOND);
 
     public static class Builder {
         private Context context;
         private LocationRequest request;
+        private Geocoder geocoder;
+        private long disconnectDelayMillis = DEFAULT_DISCONNECT_DELAY_MILLIS;
+        private LocationBackend backend;
+        private LocationFilter filter;
+        private DedupFilter    dedupFilter;
+        private Scheduler      scheduler;
 
         public Builder(Context context) {
             this.context = context;
@@ -116,13 +172,75 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
             return this;
         }
 
+        /**
+         * Let play services hold locations up to the given time and deliver them together, so the device
+         * wakes up less often. Meant for {@link #getLocationBatches()}.
+         */
+        public Builder setMaxWaitTime(long millis) {
+            request.setMaxWaitTime(millis);
+            return this;
+        }
+
         public Builder setSmallestDisplacement(float smallestDisplacementMeters) {
             request.setSmallestDisplacement(smallestDisplacementMeters);
             return this;
         }
 
+        public Builder setGeocoder(Geocoder geocoder) {
+            this.geocoder = geocoder;
+            return this;
+        }
+
+        /**
+         * How long to stay connected after the last subscriber leaves, so quick resubscriptions (like on
+         * configuration changes) reuse the connection. Zero disconnects right away.
+         */
+        public Builder setDisconnectDelay(long millis) {
+            this.disconnectDelayMillis = millis;
+            return this;
+        }
+
+        /**
+         * Get updates from the given backend, {@link GoogleApiClientLocationBackend} by default. A backend instance
+         * cannot be shared by several helpers.
+         */
+        public Builder setBackend(LocationBackend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        /**
+         * Run locations through the given filter once, before delivering them to any subscriber
+         *
+         * @see LocationFilters
+         */
+        public Builder setFilter(LocationFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Drop locations closer than the given distance to the last delivered one, unless the given time has
+         * passed since it. Runs after any filter set with {@link #setFilter(LocationFilter)}.
+         *
+         * @see DedupFilter
+         */
+        public Builder setDeduplication(float distanceMeters, long windowMillis) {
+            this.dedupFilter = new DedupFilter(distanceMeters, windowMillis);
+            return this;
+        }
+
+        /**
+         * Runs the delayed disconnect and the connection retries on the given scheduler instead of a thread of the
+         * helper, so tests can drive them in virtual time
+         */
+        Builder setScheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
         public LocationHelper build() {
-            return new LocationHelper(context, request);
+            return new LocationHelper(this);
         }
     }
 
@@ -135,66 +253,166 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
         DEBUG = enable;
     }
 
-    private synchronized boolean dispatchNewLocation(Location location) {
-        int count = 0;
-        Iterator<ObservableEmitter<? super Location>> iterator = emitters.iterator();
-        while (iterator.hasNext()) {
-            final ObservableEmitter<? super Location> subscriber = iterator.next();
-            if (!subscriber.isDisposed()) {
-                count++;
-                if (null != location) {
-                    subscriber.onNext(location);
-                }
-            } else {
-                iterator.remove();
+    static boolean isDebug() {
+        return DEBUG;
+    }
+
+    private boolean dispatchNewLocation(Location location) {
+        if (null != location) {
+            location = applyFilter(location);
+            if (null == location) {
+                return !emitters.isEmpty();
+            }
+        }
+        return deliverLocation(location);
+    }
+
+    /**
+     * @return the location as the filter passes it on, null if dropped
+     */
+    @Nullable
+    private Location applyFilter(@NonNull Location location) {
+        if (null == filter) {
+            return location;
+        }
+        final Location filtered;
+        synchronized (filter) {
+            filtered = filter.filter(location);
+        }
+        if (null == filtered) {
+            filteredOutCount.incrementAndGet();
+        }
+        return filtered;
+    }
+
+    private boolean deliverLocation(@Nullable Location location) {
+        if (null != location) {
+            lastLocation = location;
+            if (timeToFirstFixMillis < 0 && startedAtMillis > 0) {
+                timeToFirstFixMillis = SystemClock.elapsedRealtime() - startedAtMillis;
+                if (DEBUG) Log.d(TAG, "First fix after " + timeToFirstFixMillis + " ms on " + backend.getClass().getSimpleName());
             }
         }
+        final int count = emitters.onNext(location);
 
         if (DEBUG) {
             Log.d(TAG, "Location " + location + " delivered to " + count + " subscribers");
         }
 
-        if (emitters.isEmpty()) {
+        if (count == 0) {
             if (DEBUG)
                 Log.d(TAG, "No more subscribers, LocationHelper will disconnect");
-            endClient();
+            scheduleDisconnect();
         }
-        return !emitters.isEmpty();
+        return count > 0;
     }
 
-    private synchronized void dispatchCompleted() {
-        Iterator<ObservableEmitter<? super Location>> iterator = emitters.iterator();
-        while (iterator.hasNext()) {
-            final ObservableEmitter<? super Location> subscriber = iterator.next();
-            if (!subscriber.isDisposed()) {
-                subscriber.onComplete();
+    private void dispatchNewLocations(List<Location> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+        final long wakeups = wakeupCount.incrementAndGet();
+        final long fixes = batchFixCount.addAndGet(locations.size());
+        if (DEBUG) Log.d(TAG, locations.size() + " locations on this wakeup, " + ((float) fixes / wakeups) + " per wakeup overall");
+
+        // batches get the same locations as single subscribers, filtered and smoothed
+        final List<Location> accepted = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            final Location filtered = applyFilter(location);
+            if (null != filtered) {
+                accepted.add(filtered);
+                deliverLocation(filtered);
             }
-            iterator.remove();
         }
+        if (!accepted.isEmpty() && batches.hasObservers()) {
+            batches.onNext(accepted);
+        }
+    }
+
+    private void dispatchCompleted() {
+        emitters.onComplete();
     }
 
-    private synchronized void dispatchError(Throwable error) {
-        Iterator<ObservableEmitter<? super Location>> iterator = emitters.iterator();
-        while (iterator.hasNext()) {
-            final ObservableEmitter<? super Location> subscriber = iterator.next();
-            if (!subscriber.isDisposed()) {
-                subscriber.onError(error);
+    private void dispatchError(Throwable error) {
+        emitters.onError(error);
+    }
+
+    /**
+     * Stops our updates and the backend, a shared client stays connected if other helpers use it
+     */
+    private synchronized void endClient() {
+        if (!backendStarted) {
+            return;
+        }
+        backendStarted = false;
+        backend.stop();
+        if (null != filter) {
+            synchronized (filter) {
+                filter.reset();
             }
-            iterator.remove();
         }
     }
 
-    private void endClient() {
-        if (apiClient.isConnecting()) {
-            if (DEBUG) Log.d(TAG, "Tried disconnect while still connecting... ignore");
+    /**
+     * @return locations dropped by the filter, which no subscriber had to process
+     */
+    public long getFilteredOutCount() {
+        return filteredOutCount.get();
+    }
+
+    /**
+     * @return milliseconds from the start of the backend to the first location delivered, or -1 if none was yet.
+     * Measured again every time the helper starts getting updates.
+     */
+    public long getTimeToFirstFix() {
+        return timeToFirstFixMillis;
+    }
+
+    /**
+     * @return times the backend delivered locations, each of them usually meaning a device wakeup
+     */
+    public long getWakeupCount() {
+        return wakeupCount.get();
+    }
+
+    /**
+     * @return average locations delivered on each wakeup, greater than one when they get batched
+     */
+    public float getFixesPerWakeup() {
+        final long wakeups = wakeupCount.get();
+        return wakeups == 0 ? 0 : (float) batchFixCount.get() / wakeups;
+    }
+
+    public final LocationBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Disconnects once the disconnect delay elapses, unless someone subscribes in between
+     */
+    private synchronized void scheduleDisconnect() {
+        if (null != pendingDisconnect) {
             return;
         }
-        apiClient.disconnect();
-        synchronized (this) {
-            if (null != sheduledTask) {
-                sheduledTask.cancel(false);
-                sheduledTask = null;
-            }
+        if (disconnectDelayMillis <= 0) {
+            disconnectIfUnused();
+            return;
+        }
+        pendingDisconnect = scheduler.scheduleDirect(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        disconnectIfUnused();
+                    }
+                },
+                disconnectDelayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void disconnectIfUnused() {
+        pendingDisconnect = null;
+        if (!checkEmittersAlive()) {
+            endClient();
         }
     }
 
@@ -265,54 +483,49 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
     }
 
     public Observable<List<Address>> getAddressesAtMyLocation(final int maxResults) {
-        return observable.observeOn(rxScheduler).map(
-                getLocationToAddressesConverter(maxResults));
+        return observable.concatMap(getLocationToAddressesConverter(maxResults));
     }
 
     public Observable<List<Address>> getAddressesAtLocation(Location location, final int maxResults) {
-        return Observable.just(location).observeOn(rxScheduler).map(
-                getLocationToAddressesConverter(maxResults)
-        );
+        return Observable.just(location).concatMap(getLocationToAddressesConverter(maxResults));
     }
 
-    public Observable<Geocoder.LocationInfo> getReverseLocationInfo(String placeName) {
-        return Observable.just(placeName).observeOn(rxScheduler).map(getAddressToInfoConverter());
+    /**
+     * Reverse geocode a whole trace, results are emitted in the same order as the given locations. Concurrent
+     * traces share the request rate.
+     *
+     * @see BatchGeocoder
+     */
+    public Flowable<List<Address>> getAddressesAtLocations(Flowable<? extends Location> locations, final int maxResults) {
+        return new BatchGeocoder.Builder(geocoder)
+                .setMaxResults(maxResults)
+                .setRateLimiter(batchRateLimiter)
+                .setErrorHandler(globalErrorWatch)
+                .build()
+                .geocode(locations);
     }
 
-    private Function<? super String, ? extends Geocoder.LocationInfo> getAddressToInfoConverter() {
-        return new Function<String, Geocoder.LocationInfo>() {
-            @Override
-            public Geocoder.LocationInfo apply(String locationName) {
-                return Geocoder.getLatLngBoundsFromAddress(locationName, Locale.getDefault().getLanguage());
-            }
-        };
+    public Observable<Geocoder.LocationInfo> getReverseLocationInfo(String placeName) {
+        return geocoder.getLocationInfoAsync(placeName, Locale.getDefault().getLanguage()).toObservable();
     }
 
-    private Function<Location, List<Address>> getLocationToAddressesConverter(final int maxResults) {
-        return new Function<Location, List<Address>>() {
+    private Function<Location, Observable<List<Address>>> getLocationToAddressesConverter(final int maxResults) {
+        return new Function<Location, Observable<List<Address>>>() {
             @Override
-            public List<Address> apply(Location location) {
-
-                List<Address> addresses = null;
-                try {
-                    addresses = Geocoder.getFromLocation(
-                            location.getLatitude(), location.getLongitude(), maxResults, Locale.getDefault().getLanguage());
-                } catch (GeocoderError error) {
-                    if (null != globalErrorWatch) {
-                        if (!globalErrorWatch.chanceToInterceptGeocoderError(error)) {
-                            throw error;
-                        }
-                    } else {
-                        throw error;
-                    }
-                }
-
-                if (null == addresses) {
-                    return Collections.emptyList();
-                } else {
-                    return addresses;
-                }
-
+            public Observable<List<Address>> apply(Location location) {
+                return geocoder.getAddressesAsync(location.getLatitude(), location.getLongitude(), maxResults, Locale.getDefault().getLanguage())
+                               .onErrorResumeNext(
+                                       new Function<Throwable, Single<List<Address>>>() {
+                                           @Override
+                                           public Single<List<Address>> apply(Throwable error) {
+                                               if (error instanceof GeocoderError && null != globalErrorWatch
+                                                       && globalErrorWatch.chanceToInterceptGeocoderError((GeocoderError) error)) {
+                                                   return Single.just(Collections.<Address>emptyList());
+                                               }
+                                               return Single.error(error);
+                                           }
+                                       })
+                               .toObservable();
             }
         };
     }
@@ -323,13 +536,10 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
 
     public LocationHelper(Context context, long longerIntervalMillis, long fastestIntervalMillis) {
         this.appContext = context.getApplicationContext();
-        GoogleApiClient.Builder builder = new GoogleApiClient.Builder(appContext);
-        builder.addApi(LocationServices.API).addConnectionCallbacks(this);
+        backend = new GoogleApiClientLocationBackend(appContext);
 
-        apiClient = builder.build();
-
-        emitters = new ArrayList<>();
         createObservable();
+        geocoder = Geocoder.getDefault();
 
         locationRequest = LocationRequest.create();
         locationRequest.setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
@@ -337,25 +547,37 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
                        .setFastestInterval(fastestIntervalMillis);
     }
 
-    private LocationHelper(Context context, LocationRequest request) {
-        this.appContext = context.getApplicationContext();
-        GoogleApiClient.Builder builder = new GoogleApiClient.Builder(appContext);
-        builder.addApi(LocationServices.API).addConnectionCallbacks(this);
-
-        apiClient = builder.build();
+    private LocationHelper(Builder helperBuilder) {
+        this.appContext = helperBuilder.context.getApplicationContext();
+        backend = null != helperBuilder.backend ? helperBuilder.backend : new GoogleApiClientLocationBackend(appContext);
 
-        emitters = new ArrayList<>();
         createObservable();
-        this.locationRequest = request;
+        this.locationRequest = helperBuilder.request;
+        this.geocoder = null != helperBuilder.geocoder ? helperBuilder.geocoder : Geocoder.getDefault();
+        this.disconnectDelayMillis = helperBuilder.disconnectDelayMillis;
+        if (null != helperBuilder.scheduler) {
+            this.scheduler = helperBuilder.scheduler;
+        }
+        if (null != helperBuilder.filter && null != helperBuilder.dedupFilter) {
+            this.filter = LocationFilters.chain(helperBuilder.filter, helperBuilder.dedupFilter);
+        } else {
+            this.filter = null != helperBuilder.filter ? helperBuilder.filter : helperBuilder.dedupFilter;
+        }
     }
 
     public final LocationRequest getLocationRequest() {
         return locationRequest;
     }
 
+    public final Geocoder getGeocoder() {
+        return geocoder;
+    }
+
     /**
      * Start listenin for location updates, and receive them when subscribed
-     *
+     * <p>
+     * The stream is shared, all subscribers are served by the same connection and late ones get the last known
+     * location right away. Updates stop once every subscriber disposes.
      *
      * @return the observable that will emit locations as known
      */
@@ -363,6 +585,175 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
         return observable;
     }
 
+    /**
+     * Same as {@link #getLocation()}, but the request is raised to the given demand while subscribed, and this
+     * subscriber only gets updates spaced out as demanded even if others asked for more frequent ones
+     *
+     * @param demand what this subscriber needs
+     * @return the observable that will emit locations as known
+     */
+    public Observable<Location> getLocation(@NonNull final LocationDemand demand) {
+        return Observable.defer(
+                new Callable<ObservableSource<Location>>() {
+                    @Override
+                    public ObservableSource<Location> call() {
+                        addDemand(demand);
+                        return observable.filter(
+                                new Predicate<Location>() {
+                                    private Location last;
+
+                                    @Override
+                                    public boolean test(Location location) {
+                                        if (demand.accepts(last, location)) {
+                                            last = location;
+                                            return true;
+                                        }
+                                        return false;
+                                    }
+                                })
+                                         .doFinally(
+                                                 new Action() {
+                                                     @Override
+                                                     public void run() {
+                                                         removeDemand(demand);
+                                                     }
+                                                 });
+                    }
+                });
+    }
+
+    /**
+     * Same as {@link #getLocation()} with backpressure, so memory stays bounded however slow this subscriber is
+     *
+     * @param backpressure what to keep while this subscriber is not requesting more locations
+     * @return the flowable that will emit locations as known
+     */
+    public Flowable<Location> getLocationFlowable(@NonNull LocationBackpressure backpressure) {
+        return backpressure.apply(observable);
+    }
+
+    /**
+     * Enter, exit and dwell events of the fences in the given engine, evaluated on this helper locations
+     *
+     * @see GeofenceEngine#monitor(Observable)
+     */
+    public Observable<GeofenceEvent> getGeofenceEvents(@NonNull GeofenceEngine engine) {
+        return engine.monitor(observable);
+    }
+
+    /**
+     * Locations as delivered by play services, all the ones gathered on a single wakeup in the same list. Set a max
+     * wait time on the request ({@link Builder#setMaxWaitTime(long)}, or a {@link LocationDemand}) to have them
+     * batched. Updates stop once every subscriber, of this or of {@link #getLocation()}, disposes.
+     *
+     * @return the flowable that will emit locations in batches, buffering them for slow consumers
+     */
+    public Flowable<List<Location>> getLocationBatches() {
+        return Flowable.create(
+                new FlowableOnSubscribe<List<Location>>() {
+                    @Override
+                    public void subscribe(final FlowableEmitter<List<Location>> emitter) {
+                        CompositeDisposable disposables = new CompositeDisposable();
+                        emitter.setDisposable(disposables);
+                        disposables.add(
+                                batches.subscribe(
+                                        new Consumer<List<Location>>() {
+                                            @Override
+                                            public void accept(List<Location> locations) {
+                                                emitter.onNext(locations);
+                                            }
+                                        }));
+                        // keeps updates going while subscribed, locations themselves arrive through the batches
+                        disposables.add(
+                                observable.subscribe(
+                                        new Consumer<Location>() {
+                                            @Override
+                                            public void accept(Location location) {
+                                            }
+                                        },
+                                        new Consumer<Throwable>() {
+                                            @Override
+                                            public void accept(Throwable throwable) {
+                                                if (!emitter.isCancelled()) {
+                                                    emitter.onError(throwable);
+                                                }
+                                            }
+                                        },
+                                        new Action() {
+                                            @Override
+                                            public void run() {
+                                                emitter.onComplete();
+                                            }
+                                        }));
+                    }
+                },
+                BackpressureStrategy.BUFFER);
+    }
+
+    /**
+     * @return the request currently asked to play services, the builder one raised to the active demands
+     */
+    public LocationRequest getActiveRequest() {
+        final LocationRequest request = activeRequest;
+        return null != request ? request : locationRequest;
+    }
+
+    private void addDemand(LocationDemand demand) {
+        synchronized (demands) {
+            demands.add(demand);
+        }
+        updateActiveRequest();
+    }
+
+    private void removeDemand(LocationDemand demand) {
+        synchronized (demands) {
+            demands.remove(demand);
+        }
+        updateActiveRequest();
+    }
+
+    /**
+     * Recomputes the request for the active demands, and if it changed while connected asks it to play services,
+     * which replaces the previous one for our listener
+     */
+    @SuppressLint("MissingPermission")
+    private void updateActiveRequest() {
+        final LocationRequest request;
+        synchronized (demands) {
+            if (demands.isEmpty()) {
+                request = null;
+            } else {
+                LocationDemand strictest = LocationDemand.fromRequest(locationRequest);
+                for (LocationDemand demand : demands) {
+                    strictest = strictest.strictest(demand);
+                }
+                final LocationRequest current = activeRequest;
+                if (null != current && LocationDemand.fromRequest(current).equals(strictest)) {
+                    return;
+                }
+                request = strictest.toRequest();
+            }
+            if (request == activeRequest) {
+                return;
+            }
+            activeRequest = request;
+
+            if (DEBUG) Log.d(TAG, "Active location request is now " + LocationDemand.fromRequest(getActiveRequest()));
+            // asked while holding the lock so concurrent changes reach play services in order, the call does not block
+            if (backendStarted && backend.isReady() && !emitters.isEmpty()) {
+                backend.requestUpdates(getActiveRequest());
+            }
+        }
+    }
+
+    /**
+     * @return the last location delivered by this helper, if any, without connecting to play services
+     */
+    @Nullable
+    public Location getLastLocation() {
+        return lastLocation;
+    }
+
     private void createObservable() {
 
         observable = Observable.create(new ObservableOnSubscribe<Location>() {
@@ -371,9 +762,10 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
             @SuppressLint("MissingPermission")
             @Override
             public void subscribe(ObservableEmitter<Location> anEmitter) throws Exception {
-                ObservableEmitter<Location> emitter = anEmitter.serialize();
+                final ObservableEmitter<Location> emitter = anEmitter.serialize();
 
-                final int locationEnabled = isLocationEnabled();
+                // backends not on the device location need neither the permission nor the settings enabled
+                final int locationEnabled = backend.requiresLocationPermission() ? isLocationEnabled() : ENABLED;
                 if (locationEnabled == NO_PERMISSION) {
                     emitter.onError(new LocationHelperError("You don't have required permissions, make sure to request them first"));
                 } else if (locationEnabled != ENABLED) {
@@ -384,79 +776,77 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
                     Log.d(TAG, "Subscribed to getLocation");
                 }
 
+                final boolean connected;
                 synchronized (LocationHelper.this) {
                     emitters.add(emitter);
+                    if (null != pendingDisconnect) {
+                        pendingDisconnect.dispose();
+                        pendingDisconnect = null;
+                    }
+                    connected = backendStarted && backend.isReady();
+                    if (!backendStarted) {
+                        if (DEBUG) Log.d(TAG, "Will start location backend");
+                        backendStarted = true;
+                        startedAtMillis = SystemClock.elapsedRealtime();
+                        timeToFirstFixMillis = -1;
+                        backend.start(backendCallbacks);
+                    }
                 }
-                if (!apiClient.isConnected() && !apiClient.isConnecting()) {
-                    if (DEBUG) Log.d(TAG, "Will connect to Google Api Client");
-                    connectApiClient();
-                } else {
-                    dispatchNewLocation(LocationServices.FusedLocationApi.getLastLocation(apiClient));
-                }
-            }
-        });
-    }
-
-    private void connectApiClient() {
-        apiClient.connect();
-        synchronized (this) {
-            if (null == sheduledTask) {
-                sheduledTask = executorService.scheduleAtFixedRate(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (!checkEmittersAlive()) {
-                            endClient();
-                        }
+                emitter.setCancellable(
+                        new Cancellable() {
+                            @Override
+                            public void cancel() {
+                                emitters.remove(emitter);
+                                if (emitters.isEmpty()) {
+                                    scheduleDisconnect();
+                                }
+                            }
+                        });
+                if (connected) {
+                    // demands added while no one was subscribed, as in the disconnect grace time, were not asked for
+                    synchronized (demands) {
+                        backend.requestUpdates(getActiveRequest());
                     }
-                }, CHECK_INTERVAL_SECS, CHECK_INTERVAL_SECS, TimeUnit.SECONDS);
+                }
+                final Location cached = lastLocation;
+                if (null != cached) {
+                    emitter.onNext(cached);
+                }
+                if (connected && null == cached) {
+                    backend.requestLastLocation();
+                }
             }
-        }
+        }).replay(1).refCount();
     }
 
-    @SuppressLint("MissingPermission")
-    @Override
-    public void onConnected(Bundle bundle) {
+    private void onBackendReady() {
         if (!checkEmittersAlive()) {
             if (DEBUG) Log.d(TAG, "Connected but no one subscribed, will disconnect");
 
-            endClient();
+            disconnectIfUnused();
         } else {
-            if (!apiClient.isConnected()) {
+            if (!backend.isReady()) {
                 // we may have issued disconnect while connecting, because unsubscriptions maybe...
                 if (DEBUG) Log.d(TAG, "onConnected called, but client disconnected");
                 dispatchCompleted(); // probably not needed?
                 return;
             }
 
-            if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED
+            if (backend.requiresLocationPermission()
+                    && ContextCompat.checkSelfPermission(appContext, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED
                     && ContextCompat.checkSelfPermission(appContext, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
                 dispatchError(new LocationHelperError("You don't have required permissions, removed while connecting"));
             } else {
-                //noinspection MissingPermission
-                boolean alive = dispatchNewLocation(LocationServices.FusedLocationApi.getLastLocation(apiClient));
-                if (alive) {
-                    // maybe we get disconnected inside dispatch
-                    //noinspection MissingPermission
-                    LocationServices.FusedLocationApi.requestLocationUpdates(apiClient, locationRequest, locationListener);
+                backend.requestUpdates(getActiveRequest());
+                if (null == lastLocation) {
+                    backend.requestLastLocation();
                 }
             }
         }
     }
 
-    private synchronized boolean checkEmittersAlive() {
-        Iterator<ObservableEmitter<? super Location>> iterator = emitters.iterator();
-        while (iterator.hasNext()) {
-            ObservableEmitter<? super Location> subscriber = iterator.next();
-            if (subscriber.isDisposed()) {
-                iterator.remove();
-            }
-        }
-        return !emitters.isEmpty();
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-
+    private boolean checkEmittersAlive() {
+        return emitters.pruneDisposed();
     }
 
     public LocationSource newLocationSource() {
@@ -582,7 +972,7 @@ public class LocationHelper implements GoogleApiClient.ConnectionCallbacks {
                 if (DEBUG)
                     Log.d(TAG, "Will retry in " + val + " ms");
 
-                helper.executorService.schedule(
+                helper.scheduler.scheduleDirect(
                         new Runnable() {
                             @Override
                             public void run() {
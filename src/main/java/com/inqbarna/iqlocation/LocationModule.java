@@ -6,6 +6,11 @@ import com.google.android.gms.location.LocationRequest;
 import com.inqbarna.iqlocation.annotation.BatteryConservativeLocation;
 import com.inqbarna.iqlocation.annotation.FastLocation;
 import com.inqbarna.iqlocation.annotation.IntermediateLocation;
+import com.inqbarna.iqlocation.cache.DiskGeocodeCache;
+import com.inqbarna.iqlocation.cache.ForwardGeocodeCache;
+import com.inqbarna.iqlocation.cache.ReverseGeocodeCache;
+
+import java.io.File;
 
 import javax.inject.Singleton;
 
@@ -21,17 +26,40 @@ public class LocationModule {
 
     private static final long QUICK_FASTEST_INTERVAL = 5 * 1000; // 5 seconds in millis
     private static final long MEDIUM_INTERVAL = 15 * 1000; // 15 seconds in millis
+    private static final String GEOCODER_CACHE_DIR = "iqgeocoder";
+    private static final int FORWARD_CACHE_MIN_PREFIX = 3;
     private Context mContext;
+    private long    mGeocoderConnectTimeout;
+    private long    mGeocoderReadTimeout;
 
     public LocationModule(Context context) {
+        this(context, Geocoder.DEFAULT_CONNECT_TIMEOUT_MILLIS, Geocoder.DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public LocationModule(Context context, long geocoderConnectTimeoutMillis, long geocoderReadTimeoutMillis) {
         mContext = context.getApplicationContext();
+        mGeocoderConnectTimeout = geocoderConnectTimeoutMillis;
+        mGeocoderReadTimeout = geocoderReadTimeoutMillis;
+    }
+
+    @Singleton
+    @Provides
+    Geocoder provideGeocoder() {
+        return Geocoder.builder()
+                       .setConnectTimeout(mGeocoderConnectTimeout)
+                       .setReadTimeout(mGeocoderReadTimeout)
+                       .setReverseCache(new ReverseGeocodeCache.Builder().build())
+                       .setForwardCache(new ForwardGeocodeCache.Builder().setPrefixIndex(FORWARD_CACHE_MIN_PREFIX).build())
+                       .setDiskCache(new DiskGeocodeCache.Builder(new File(mContext.getCacheDir(), GEOCODER_CACHE_DIR)).build())
+                       .build();
     }
 
     @Singleton
     @Provides
     @FastLocation
-    LocationHelper provideFastLocation() {
+    LocationHelper provideFastLocation(Geocoder geocoder) {
         return LocationHelper.builder(mContext)
+                             .setGeocoder(geocoder)
                              .setFastestInterval(QUICK_FASTEST_INTERVAL)
                              .setInterval(QUICK_FASTEST_INTERVAL)
                              .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
@@ -41,15 +69,16 @@ public class LocationModule {
     @Singleton
     @Provides
     @BatteryConservativeLocation
-    LocationHelper provideBatterySaverLocation() {
-        return LocationHelper.builder(mContext).build();
+    LocationHelper provideBatterySaverLocation(Geocoder geocoder) {
+        return LocationHelper.builder(mContext).setGeocoder(geocoder).build();
     }
 
     @Singleton
     @Provides
     @IntermediateLocation
-    LocationHelper provideIntermediateRequestLocation() {
+    LocationHelper provideIntermediateRequestLocation(Geocoder geocoder) {
         return LocationHelper.builder(mContext)
+                             .setGeocoder(geocoder)
                              .setInterval(MEDIUM_INTERVAL)
                              .setFastestInterval(QUICK_FASTEST_INTERVAL)
                              .setPriority(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY)
@@ -38,7 +38,9 @@ public class LocationPermissionRequestDelegate extends PermissionRequestDelegate
     private int mRequestCodeResolveSettings    = DEFAULT_RC_RESOLVE_SETTINGS;
 
     private final PermissionDelegateCallbacks mCallbacks;
+    private       ApiClientManager            mClientManager;
     private       GoogleApiClient             mApiClient;
+    private       boolean                     mClientAcquired;
 
     private final GoogleApiClient.ConnectionCallbacks mClientCallback = new GoogleApiClient.ConnectionCallbacks() {
         @Override
@@ -211,9 +213,8 @@ public class LocationPermissionRequestDelegate extends PermissionRequestDelegate
         mCallbacks = callbacks;
 
         if (options.checkSettings) {
-            mApiClient = new GoogleApiClient.Builder(getContext(), mClientCallback, mConnectionFailedCallback)
-                    .addApi(LocationServices.API)
-                    .build();
+            mClientManager = ApiClientManager.get(getContext());
+            mApiClient = mClientManager.getClient();
         }
     }
 
@@ -274,14 +275,16 @@ public class LocationPermissionRequestDelegate extends PermissionRequestDelegate
     }
 
     public void onStart() {
-        if (null != mApiClient) {
-            mApiClient.connect();
+        if (null != mClientManager && !mClientAcquired) {
+            mClientAcquired = true;
+            mClientManager.acquire(mClientCallback, mConnectionFailedCallback);
         }
     }
 
     public void onStop() {
-        if (null != mApiClient) {
-            mApiClient.disconnect();
+        if (mClientAcquired) {
+            mClientAcquired = false;
+            mClientManager.release(mClientCallback, mConnectionFailedCallback);
         }
     }
 
@@ -0,0 +1,145 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.cache.GeocodeCodec;
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Provider for deterministic tests and benchmarks. In recording mode it forwards requests to another provider and
+ * keeps every answer, which can be saved and later loaded in replay mode to answer the same requests again without
+ * any network access.
+ */
+public class ReplayGeocodingProvider implements GeocodingProvider {
+
+    private static final int MAGIC   = 0x49515250; // IQRP
+    private static final int VERSION = 1;
+
+    private final GeocodingProvider                  delegate;
+    private final Map<String, List<Address>>         reverse = new ConcurrentHashMap<>();
+    private final Map<String, Geocoder.LocationInfo> forward = new ConcurrentHashMap<>();
+
+    private ReplayGeocodingProvider(@Nullable GeocodingProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    public static ReplayGeocodingProvider recording(@NonNull GeocodingProvider delegate) {
+        return new ReplayGeocodingProvider(delegate);
+    }
+
+    /**
+     * @param in a recording as written by {@link #save(OutputStream)}
+     */
+    public static ReplayGeocodingProvider replaying(@NonNull InputStream in) throws IOException {
+        ReplayGeocodingProvider provider = new ReplayGeocodingProvider(null);
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a geocoder recording, or unsupported version");
+        }
+        for (int i = 0, count = data.readInt(); i < count; i++) {
+            provider.reverse.put(data.readUTF(), GeocodeCodec.readAddresses(data));
+        }
+        for (int i = 0, count = data.readInt(); i < count; i++) {
+            provider.forward.put(data.readUTF(), GeocodeCodec.readLocationInfo(data));
+        }
+        return provider;
+    }
+
+    public boolean isRecording() {
+        return null != delegate;
+    }
+
+    public void save(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(reverse.size());
+        for (Map.Entry<String, List<Address>> entry : reverse.entrySet()) {
+            data.writeUTF(entry.getKey());
+            GeocodeCodec.writeAddresses(data, entry.getValue());
+        }
+        data.writeInt(forward.size());
+        for (Map.Entry<String, Geocoder.LocationInfo> entry : forward.entrySet()) {
+            data.writeUTF(entry.getKey());
+            GeocodeCodec.writeLocationInfo(data, entry.getValue());
+        }
+        data.flush();
+    }
+
+    @Override
+    public Single<List<Address>> getAddresses(double lat, double lng, int maxResults, String languageCode) {
+        final String key = reverseKey(lat, lng, maxResults, languageCode);
+        if (isRecording()) {
+            return delegate.getAddresses(lat, lng, maxResults, languageCode)
+                           .doOnSuccess(
+                                   new Consumer<List<Address>>() {
+                                       @Override
+                                       public void accept(List<Address> addresses) {
+                                           reverse.put(key, Collections.unmodifiableList(addresses));
+                                       }
+                                   });
+        }
+
+        return Single.fromCallable(
+                new Callable<List<Address>>() {
+                    @Override
+                    public List<Address> call() {
+                        List<Address> addresses = reverse.get(key);
+                        if (null == addresses) {
+                            throw new GeocoderError("No recorded response for " + key, null);
+                        }
+                        return addresses;
+                    }
+                });
+    }
+
+    @Override
+    public Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode) {
+        final String key = forwardKey(addressName, languageCode);
+        if (isRecording()) {
+            return delegate.getLocationInfo(addressName, languageCode)
+                           .doOnSuccess(
+                                   new Consumer<Geocoder.LocationInfo>() {
+                                       @Override
+                                       public void accept(Geocoder.LocationInfo info) {
+                                           forward.put(key, info);
+                                       }
+                                   });
+        }
+
+        return Maybe.fromCallable(
+                new Callable<Geocoder.LocationInfo>() {
+                    @Override
+                    public Geocoder.LocationInfo call() {
+                        return forward.get(key);
+                    }
+                });
+    }
+
+    private static String reverseKey(double lat, double lng, int maxResults, String languageCode) {
+        // micro degree resolution, enough to tell apart any two fixes worth geocoding separately
+        return Math.round(lat * 1e6) + "," + Math.round(lng * 1e6) + "|" + maxResults + "|" + languageCode;
+    }
+
+    private static String forwardKey(String addressName, String languageCode) {
+        return languageCode + "|" + addressName.trim().toLowerCase(Locale.ROOT);
+    }
+}
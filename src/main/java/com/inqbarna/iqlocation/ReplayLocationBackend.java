@@ -0,0 +1,343 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+import com.inqbarna.iqlocation.trace.TraceCursor;
+import com.inqbarna.iqlocation.trace.TraceReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backend replaying recorded fixes instead of asking Play Services, so everything behind {@link LocationHelper},
+ * subscribers, filters, geofences or the geocoder, can be driven deterministically and load tested without a device
+ * moving around. Fixes are played on a dedicated thread, spaced as recorded at real time or at a multiple of it, or
+ * back to back as fast as possible.
+ * <p>
+ * The request interval is ignored, every recorded fix is delivered, while a max wait time longer than the interval
+ * batches fixes as the platform would. Played fixes are always copies, the given ones are never modified. No location permission is
+ * needed to replay.
+ * <pre>
+ * LocationHelper helper = LocationHelper.builder(context)
+ *         .setBackend(new ReplayLocationBackend.Builder(TraceReader.open(file))
+ *                             .setSpeed(ReplayLocationBackend.AS_FAST_AS_POSSIBLE)
+ *                             .build())
+ *         .build();
+ * </pre>
+ */
+public class ReplayLocationBackend implements LocationBackend {
+
+    public static final float REAL_TIME           = 1f;
+    public static final float AS_FAST_AS_POSSIBLE = Float.POSITIVE_INFINITY;
+
+    private static final String THREAD_NAME = "IQLocation-replay";
+
+    private final TraceReader    reader;
+    private final List<Location> locations;
+    private final float          speed;
+    private final boolean        loop;
+    private final boolean        rebaseTime;
+
+    private final AtomicLong replayedCount = new AtomicLong();
+
+    private CountDownLatch           finished = new CountDownLatch(0);
+    private volatile Callbacks       callbacks;
+    private volatile LocationRequest request;
+    private volatile Location        lastLocation;
+    private Thread                   thread;
+
+    public static class Builder {
+        private final TraceReader    reader;
+        private final List<Location> locations;
+
+        private float   speed      = REAL_TIME;
+        private boolean loop;
+        private boolean rebaseTime = true;
+
+        public Builder(@NonNull TraceReader reader) {
+            this.reader = reader;
+            this.locations = null;
+        }
+
+        /**
+         * @param locations fixes to replay, oldest first
+         */
+        public Builder(@NonNull List<Location> locations) {
+            this.reader = null;
+            this.locations = new ArrayList<>(locations);
+        }
+
+        /**
+         * @param multiplier how much faster than recorded fixes are played, {@link #REAL_TIME} by default or
+         *                   {@link #AS_FAST_AS_POSSIBLE} not to wait between them at all
+         */
+        public Builder setSpeed(float multiplier) {
+            if (!(multiplier > 0)) {
+                throw new IllegalArgumentException("Speed must be positive, given " + multiplier);
+            }
+            this.speed = multiplier;
+            return this;
+        }
+
+        /**
+         * Start over once the last fix is played, until stopped. Off by default
+         */
+        public Builder setLoop(boolean loop) {
+            this.loop = loop;
+            return this;
+        }
+
+        /**
+         * Shift fix times so the first one played is now, keeping their spacing, so age based filters take them as
+         * fresh. On by default
+         */
+        public Builder setRebaseTime(boolean rebaseTime) {
+            this.rebaseTime = rebaseTime;
+            return this;
+        }
+
+        public ReplayLocationBackend build() {
+            return new ReplayLocationBackend(this);
+        }
+    }
+
+    private ReplayLocationBackend(Builder builder) {
+        this.reader = builder.reader;
+        this.locations = builder.locations;
+        this.speed = builder.speed;
+        this.loop = builder.loop;
+        this.rebaseTime = builder.rebaseTime;
+    }
+
+    @Override
+    public synchronized void start(@NonNull Callbacks callbacks) {
+        if (null != this.callbacks) {
+            return;
+        }
+        this.callbacks = callbacks;
+        request = null;
+        finished = new CountDownLatch(1);
+        thread = new Thread(new Player(callbacks, finished), THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (null == callbacks) {
+            return;
+        }
+        callbacks = null;
+        request = null;
+        thread.interrupt();
+        thread = null;
+        notifyAll();
+    }
+
+    @Override
+    public boolean isReady() {
+        return null != callbacks;
+    }
+
+    /**
+     * @return false, replayed fixes do not come from the device
+     */
+    @Override
+    public boolean requiresLocationPermission() {
+        return false;
+    }
+
+    @Override
+    public void requestLastLocation() {
+        final Callbacks current = callbacks;
+        if (null != current) {
+            current.onLocationChanged(lastLocation);
+        }
+    }
+
+    @Override
+    public synchronized void requestUpdates(@NonNull LocationRequest request) {
+        if (isReady()) {
+            this.request = request;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return fixes delivered since this backend was created
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * Waits for the replay to end, either because every fix was played or because the backend was stopped. Never
+     * ends by itself when looping.
+     *
+     * @return true if it ended, false if the timeout elapsed first
+     */
+    public boolean awaitEnd(long timeout, TimeUnit unit) throws InterruptedException {
+        final CountDownLatch latch;
+        synchronized (this) {
+            latch = finished;
+        }
+        return latch.await(timeout, unit);
+    }
+
+    private synchronized LocationRequest awaitRequest(Callbacks owner) throws InterruptedException {
+        while (null == request && owner == callbacks) {
+            wait();
+        }
+        return request;
+    }
+
+    private Iterator<Location> iterator() {
+        if (null != locations) {
+            return locations.iterator();
+        }
+        final TraceCursor cursor = reader.cursor();
+        return new Iterator<Location>() {
+            private boolean fetched;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!fetched) {
+                    hasNext = cursor.next();
+                    fetched = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Location next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                fetched = false;
+                return cursor.toLocation();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private final class Player implements Runnable {
+        private final Callbacks      owner;
+        private final CountDownLatch finished;
+
+        Player(Callbacks owner, CountDownLatch finished) {
+            this.owner = owner;
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            try {
+                owner.onReady();
+                do {
+                    if (null == awaitRequest(owner) || !play()) {
+                        return;
+                    }
+                } while (loop);
+            } catch (InterruptedException e) {
+                // stopped
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * @return false if stopped while playing
+         */
+        private boolean play() throws InterruptedException {
+            final long startNanos = System.nanoTime();
+            final long startMillis = System.currentTimeMillis();
+            final long startElapsedNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    ? SystemClock.elapsedRealtimeNanos() : 0;
+            final boolean paced = speed != AS_FAST_AS_POSSIBLE;
+
+            long firstTime = 0;
+            long batchTime = 0;
+            List<Location> batch = null;
+            boolean first = true;
+
+            final Iterator<Location> fixes = iterator();
+            while (fixes.hasNext()) {
+                Location fix = fixes.next();
+                final long time = fix.getTime();
+                if (first) {
+                    firstTime = time;
+                    first = false;
+                }
+                final long offsetMillis = time - firstTime;
+
+                if (paced) {
+                    final long delayNanos = startNanos + (long) (offsetMillis * 1000000d / speed) - System.nanoTime();
+                    if (delayNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(delayNanos);
+                    }
+                }
+                if (null != locations) {
+                    // never hand out what we were given, filters down the line may modify it
+                    fix = new Location(fix);
+                }
+                if (rebaseTime) {
+                    fix = rebase(fix, startMillis + offsetMillis, startElapsedNanos + offsetMillis * 1000000);
+                }
+
+                final LocationRequest current = request;
+                final long maxWaitMillis = null != current ? LocationDemand.maxWaitTime(current) : 0;
+                if (maxWaitMillis <= 0 && null == batch) {
+                    if (!deliver(Collections.singletonList(fix))) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (null == batch) {
+                    batch = new ArrayList<>();
+                    batchTime = time;
+                }
+                batch.add(fix);
+                if (time - batchTime >= maxWaitMillis) {
+                    if (!deliver(batch)) {
+                        return false;
+                    }
+                    batch = null;
+                }
+            }
+            return null == batch || deliver(batch);
+        }
+
+        private Location rebase(Location fix, long timeMillis, long elapsedRealtimeNanos) {
+            fix.setTime(timeMillis);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                fix.setElapsedRealtimeNanos(elapsedRealtimeNanos);
+            }
+            return fix;
+        }
+
+        private boolean deliver(List<Location> fixes) {
+            if (owner != callbacks) {
+                return false;
+            }
+            lastLocation = fixes.get(fixes.size() - 1);
+            replayedCount.addAndGet(fixes.size());
+            owner.onLocationsChanged(fixes);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.inqbarna.iqlocation.cache;
+
+import android.location.Address;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.inqbarna.iqlocation.Geocoder;
+import com.inqbarna.iqlocation.util.GeoHash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk tier for geocoder results, so addresses resolved on a previous run are available after a cold start.
+ * <p>
+ * Entries are appended to a single journal file made of a versioned header followed by
+ * <code>[key, expiration, payload length, payload]</code> records, the payload being the {@link GeocodeCodec}
+ * form of the result. The journal is read the first time the cache is queried, never on construction, and it
+ * is rewritten keeping only the most recently used entries once it grows beyond the configured size. A
+ * truncated trailing record, as left by a process killed while writing, is dropped on load.
+ * <p>
+ * All methods do disk I/O and must be called from a worker thread.
+ */
+public class DiskGeocodeCache {
+
+    private static final String TAG = "IQGeocodeDisk";
+
+    public static final int  FORMAT_VERSION     = 1;
+    public static final long DEFAULT_MAX_BYTES  = 256 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 7L * 24 * 60 * 60 * 1000; // 7 days in millis
+
+    private static final int    MAGIC     = 0x49514743; // IQGC
+    private static final int    HEADER    = 8;
+    private static final String FILE_NAME = "geocode.journal";
+
+    private static final char REVERSE = 'r';
+    private static final char FORWARD = 'f';
+
+    private final File file;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final int  precision;
+
+    private LinkedHashMap<String, Record> index;
+    private long                          liveBytes;
+    private long                          journalBytes;
+
+    private long hitCount;
+    private long missCount;
+
+    public static class Builder {
+        private final File directory;
+        private long maxBytes  = DEFAULT_MAX_BYTES;
+        private long ttlMillis = DEFAULT_TTL_MILLIS;
+        private int  precision = ReverseGeocodeCache.DEFAULT_PRECISION;
+
+        public Builder(@NonNull File directory) {
+            this.directory = directory;
+        }
+
+        public Builder setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder setTtl(long millis) {
+            this.ttlMillis = millis;
+            return this;
+        }
+
+        /**
+         * @param precision geohash length used to quantize the coordinates given to
+         *                  {@link #getAddresses(double, double, int, String)}. A {@link Geocoder} does not use it, it
+         *                  keys this tier on the cells of its memory cache instead so both tiers always agree.
+         */
+        public Builder setPrecision(int precision) {
+            GeoHash.encode(0, 0, precision); // validates range
+            this.precision = precision;
+            return this;
+        }
+
+        public DiskGeocodeCache build() {
+            return new DiskGeocodeCache(this);
+        }
+    }
+
+    private DiskGeocodeCache(Builder builder) {
+        file = new File(builder.directory, FILE_NAME);
+        maxBytes = builder.maxBytes;
+        ttlMillis = builder.ttlMillis;
+        precision = builder.precision;
+    }
+
+    @Nullable
+    public List<Address> getAddresses(double lat, double lng, int maxResults, String languageCode) {
+        return getAddresses(GeoHash.encode(lat, lng, precision), precision, maxResults, languageCode);
+    }
+
+    /**
+     * @param cell      geohash of the location, as given by {@link ReverseGeocodeCache#cellOf(double, double)}
+     * @param precision length of that geohash
+     */
+    @Nullable
+    public List<Address> getAddresses(long cell, int precision, int maxResults, String languageCode) {
+        byte[] payload = lookup(reverseKey(cell, precision, maxResults, languageCode));
+        if (null == payload) {
+            return null;
+        }
+        try {
+            return GeocodeCodec.readAddresses(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            Log.w(TAG, "Corrupted cache entry, ignoring it", e);
+            return null;
+        }
+    }
+
+    public void putAddresses(double lat, double lng, int maxResults, String languageCode, List<Address> addresses) {
+        putAddresses(GeoHash.encode(lat, lng, precision), precision, maxResults, languageCode, addresses);
+    }
+
+    /**
+     * @param cell      geohash of the location, as given by {@link ReverseGeocodeCache#cellOf(double, double)}
+     * @param precision length of that geohash
+     */
+    public void putAddresses(long cell, int precision, int maxResults, String languageCode, List<Address> addresses) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            GeocodeCodec.writeAddresses(new DataOutputStream(bytes), addresses);
+            store(reverseKey(cell, precision, maxResults, languageCode), bytes.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist geocoder result", e);
+        }
+    }
+
+    @Nullable
+    public Geocoder.LocationInfo getLocationInfo(String addressName, String languageCode) {
+        byte[] payload = lookup(forwardKey(addressName, languageCode));
+        if (null == payload) {
+            return null;
+        }
+        try {
+            return GeocodeCodec.readLocationInfo(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            Log.w(TAG, "Corrupted cache entry, ignoring it", e);
+            return null;
+        }
+    }
+
+    public void putLocationInfo(String addressName, String languageCode, Geocoder.LocationInfo info) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            GeocodeCodec.writeLocationInfo(new DataOutputStream(bytes), info);
+            store(forwardKey(addressName, languageCode), bytes.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to persist geocoder result", e);
+        }
+    }
+
+    public synchronized void clear() {
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        liveBytes = 0;
+        journalBytes = 0;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private static String reverseKey(long cell, int precision, int maxResults, String languageCode) {
+        return REVERSE + GeoHash.toBase32(cell, precision) + '|' + maxResults + '|' + languageCode;
+    }
+
+    /**
+     * Normalized as the memory tier does, so a query hits both or neither
+     */
+    private static String forwardKey(String addressName, String languageCode) {
+        return FORWARD + languageCode + '|' + ForwardGeocodeCache.normalize(addressName);
+    }
+
+    private synchronized byte[] lookup(String key) {
+        ensureLoaded();
+        Record record = index.get(key);
+        if (null != record && record.expiresAt <= System.currentTimeMillis()) {
+            index.remove(key);
+            liveBytes -= record.size;
+            record = null;
+        }
+        if (null == record) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return record.payload;
+    }
+
+    private synchronized void store(String key, byte[] payload) throws IOException {
+        ensureLoaded();
+        Record record = new Record(payload, System.currentTimeMillis() + ttlMillis, recordSize(key, payload));
+        Record previous = index.put(key, record);
+        if (null != previous) {
+            liveBytes -= previous.size;
+        }
+        liveBytes += record.size;
+
+        if (journalBytes + record.size > maxBytes) {
+            compact();
+        } else {
+            append(key, record);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (null != index) {
+            return;
+        }
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        liveBytes = 0;
+        journalBytes = 0;
+        if (!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        boolean truncated = false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                Log.d(TAG, "Discarding geocoder cache written with another format");
+                in.close();
+                in = null;
+                clear();
+                return;
+            }
+            validLength = HEADER;
+
+            final long now = System.currentTimeMillis();
+            final long fileLength = file.length();
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long expiresAt = in.readLong();
+                final int length = in.readInt();
+                if (length < 0 || length > fileLength - validLength) {
+                    // not a record we wrote, allocating it could even run out of memory
+                    throw new IOException("Corrupt geocoder cache record of " + length + " bytes");
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                Record record = new Record(payload, expiresAt, recordSize(key, payload));
+                validLength += record.size;
+                Record previous = index.remove(key);
+                if (null != previous) {
+                    liveBytes -= previous.size;
+                }
+                if (expiresAt > now) {
+                    index.put(key, record);
+                    liveBytes += record.size;
+                }
+            }
+        } catch (EOFException e) {
+            Log.w(TAG, "Truncated geocoder cache, dropping incomplete tail");
+            truncated = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed reading geocoder cache, starting empty", e);
+            closeQuietly(in);
+            in = null;
+            clear();
+            return;
+        } finally {
+            closeQuietly(in);
+        }
+
+        if (truncated) {
+            truncate(validLength);
+        }
+        journalBytes = validLength;
+    }
+
+    private void append(String key, Record record) throws IOException {
+        final boolean fresh = journalBytes == 0;
+        if (fresh) {
+            ensureDirectory();
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !fresh)));
+        try {
+            if (fresh) {
+                writeHeader(out);
+                journalBytes = HEADER;
+            }
+            writeRecord(out, key, record);
+            journalBytes += record.size;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until live data takes three quarters of the allowed size, and
+     * rewrites the journal with them
+     */
+    private void compact() throws IOException {
+        final long target = (maxBytes * 3) / 4 - HEADER;
+        Iterator<Map.Entry<String, Record>> iterator = index.entrySet().iterator();
+        while (liveBytes > target && iterator.hasNext()) {
+            liveBytes -= iterator.next().getValue().size;
+            iterator.remove();
+        }
+
+        ensureDirectory();
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            writeHeader(out);
+            for (Map.Entry<String, Record> entry : index.entrySet()) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        journalBytes = HEADER + liveBytes;
+    }
+
+    private void ensureDirectory() throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot truncate " + file, e);
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, Record record) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(record.expiresAt);
+        out.writeInt(record.payload.length);
+        out.write(record.payload);
+    }
+
+    private static int recordSize(String key, byte[] payload) {
+        // modified UTF-8 length, as written by writeUTF
+        int keyBytes = 0;
+        for (int i = 0, length = key.length(); i < length; i++) {
+            char c = key.charAt(i);
+            keyBytes += c < 0x80 && c != 0 ? 1 : (c < 0x800 ? 2 : 3);
+        }
+        return 2 + keyBytes + 8 + 4 + payload.length;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static final class Record {
+        final byte[] payload;
+        final long   expiresAt;
+        final int    size;
+
+        Record(byte[] payload, long expiresAt, int size) {
+            this.payload = payload;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.inqbarna.iqlocation.cache;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.Geocoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Bounded LRU cache for forward geocoding results, keyed by the normalized query so differences in case or
+ * spacing map to the same entry.
+ * <p>
+ * Optionally resolved places are also kept sorted by name, so {@link #complete(String, String, int)} can suggest
+ * the ones already resolved while the user types. Lookups themselves only ever answer the exact normalized query,
+ * "rome" must not resolve to a cached "Romeo".
+ */
+public class ForwardGeocodeCache {
+
+    public static final int  DEFAULT_MAX_ENTRIES = 64;
+    public static final long DEFAULT_TTL_MILLIS  = 60 * 60 * 1000; // 60 minutes in millis
+
+    private static final char LANGUAGE_SEPARATOR = '|';
+
+    private final int  maxEntries;
+    private final long ttlMillis;
+    private final int  minPrefixLength;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final TreeMap<String, Entry>       byName;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public static class Builder {
+        private int  maxEntries      = DEFAULT_MAX_ENTRIES;
+        private long ttlMillis       = DEFAULT_TTL_MILLIS;
+        private int  minPrefixLength = 0;
+
+        public Builder setMaxEntries(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Max entries must be positive");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder setTtl(long millis) {
+            this.ttlMillis = millis;
+            return this;
+        }
+
+        /**
+         * Keeps cached places sorted by name for {@link #complete(String, String, int)} suggestions
+         *
+         * @param minPrefixLength shortest normalized prefix completed, 0 disables the prefix index
+         */
+        public Builder setPrefixIndex(int minPrefixLength) {
+            if (minPrefixLength < 0) {
+                throw new IllegalArgumentException("Prefix length cannot be negative");
+            }
+            this.minPrefixLength = minPrefixLength;
+            return this;
+        }
+
+        public ForwardGeocodeCache build() {
+            return new ForwardGeocodeCache(this);
+        }
+    }
+
+    private ForwardGeocodeCache(Builder builder) {
+        maxEntries = builder.maxEntries;
+        ttlMillis = builder.ttlMillis;
+        minPrefixLength = builder.minPrefixLength;
+        byName = new TreeMap<>();
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    byName.remove(eldest.getKey());
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the query trimmed, lower cased and with inner white space collapsed to single spaces
+     */
+    @NonNull
+    public static String normalize(@NonNull String query) {
+        StringBuilder builder = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            final char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    builder.append(' ');
+                    pendingSpace = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public boolean isPrefixIndexEnabled() {
+        return minPrefixLength > 0;
+    }
+
+    @Nullable
+    public synchronized Geocoder.LocationInfo get(String query, String languageCode) {
+        final long now = SystemClock.elapsedRealtime();
+        final String key = keyOf(normalize(query), languageCode);
+
+        Entry entry = entries.get(key);
+        if (null != entry && entry.expiresAt <= now) {
+            remove(key);
+            entry = null;
+        }
+        if (null != entry) {
+            hitCount++;
+            return entry.info;
+        }
+
+        missCount++;
+        return null;
+    }
+
+    public synchronized void put(String query, String languageCode, @NonNull Geocoder.LocationInfo info) {
+        final String normalized = normalize(query);
+        final String key = keyOf(normalized, languageCode);
+        Entry entry = new Entry(key, query.trim(), info, SystemClock.elapsedRealtime() + ttlMillis);
+        entries.put(key, entry);
+        if (isPrefixIndexEnabled()) {
+            byName.put(key, entry);
+        }
+    }
+
+    /**
+     * @return the names, as first queried, of the cached places starting with the given prefix in name order,
+     * useful as suggestions while typing. Empty if the prefix index is disabled.
+     */
+    @NonNull
+    public synchronized List<String> complete(String prefix, String languageCode, int maxResults) {
+        final String normalized = normalize(prefix);
+        if (!isPrefixIndexEnabled() || maxResults <= 0 || normalized.length() < minPrefixLength) {
+            return Collections.emptyList();
+        }
+        final long now = SystemClock.elapsedRealtime();
+        final String key = keyOf(normalized, languageCode);
+        List<String> names = new ArrayList<>();
+        for (Entry entry : withPrefix(key).values()) {
+            if (entry.expiresAt > now) {
+                names.add(entry.name);
+                if (names.size() == maxResults) {
+                    break;
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Drops expired entries, they are otherwise removed lazily when looked up or pushed out by LRU order
+     */
+    public synchronized void trimExpired() {
+        final long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.expiresAt <= now) {
+                iterator.remove();
+                byName.remove(entry.key);
+                evictionCount++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byName.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ForwardGeocodeCache{size=" + entries.size() + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    private static String keyOf(String normalized, String languageCode) {
+        return languageCode + LANGUAGE_SEPARATOR + normalized;
+    }
+
+    private SortedMap<String, Entry> withPrefix(String keyPrefix) {
+        return byName.subMap(keyPrefix, keyPrefix + Character.MAX_VALUE);
+    }
+
+    private void remove(String key) {
+        entries.remove(key);
+        byName.remove(key);
+        evictionCount++;
+    }
+
+    private static final class Entry {
+        final String                key;
+        final String                name;
+        final Geocoder.LocationInfo info;
+        final long                  expiresAt;
+
+        Entry(String key, String name, Geocoder.LocationInfo info, long expiresAt) {
+            this.key = key;
+            this.name = name;
+            this.info = info;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
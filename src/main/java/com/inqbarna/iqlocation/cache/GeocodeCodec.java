@@ -0,0 +1,191 @@
+package com.inqbarna.iqlocation.cache;
+
+import android.location.Address;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.inqbarna.iqlocation.Geocoder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compact binary form of the geocoder results. Only the fields the {@link Geocoder} fills are written, preceded
+ * by a bit mask telling which of them are present.
+ */
+public final class GeocodeCodec {
+
+    private static final int HAS_LOCATION      = 1;
+    private static final int HAS_LOCALITY      = 1 << 1;
+    private static final int HAS_SUB_LOCALITY  = 1 << 2;
+    private static final int HAS_COUNTRY_CODE  = 1 << 3;
+    private static final int HAS_COUNTRY_NAME  = 1 << 4;
+    private static final int HAS_ADMIN_AREA    = 1 << 5;
+    private static final int HAS_SUB_ADMIN     = 1 << 6;
+    private static final int HAS_POSTAL_CODE   = 1 << 7;
+    private static final int HAS_ADDRESS_LINE  = 1 << 8;
+    private static final int HAS_LOCATION_TYPE = 1 << 9;
+
+    private static final int HAS_BOUNDS   = 1;
+    private static final int HAS_VIEWPORT = 1 << 1;
+    private static final int HAS_LAT_LNG  = 1 << 2;
+
+    private GeocodeCodec() {
+    }
+
+    public static void writeAddresses(DataOutput out, List<Address> addresses) throws IOException {
+        out.writeShort(addresses.size());
+        for (int i = 0, size = addresses.size(); i < size; i++) {
+            writeAddress(out, addresses.get(i));
+        }
+    }
+
+    public static List<Address> readAddresses(DataInput in) throws IOException {
+        final int count = in.readUnsignedShort();
+        List<Address> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add(readAddress(in));
+        }
+        return addresses;
+    }
+
+    public static void writeAddress(DataOutput out, Address address) throws IOException {
+        final String addressLine = address.getMaxAddressLineIndex() >= 0 ? address.getAddressLine(0) : null;
+        final Bundle extras = address.getExtras();
+        final String locationType = null != extras ? extras.getString(Geocoder.LOCATION_TYPE) : null;
+
+        int mask = 0;
+        if (address.hasLatitude() && address.hasLongitude()) {
+            mask |= HAS_LOCATION;
+        }
+        mask |= flag(address.getLocality(), HAS_LOCALITY);
+        mask |= flag(address.getSubLocality(), HAS_SUB_LOCALITY);
+        mask |= flag(address.getCountryCode(), HAS_COUNTRY_CODE);
+        mask |= flag(address.getCountryName(), HAS_COUNTRY_NAME);
+        mask |= flag(address.getAdminArea(), HAS_ADMIN_AREA);
+        mask |= flag(address.getSubAdminArea(), HAS_SUB_ADMIN);
+        mask |= flag(address.getPostalCode(), HAS_POSTAL_CODE);
+        mask |= flag(addressLine, HAS_ADDRESS_LINE);
+        mask |= flag(locationType, HAS_LOCATION_TYPE);
+
+        out.writeShort(mask);
+        if ((mask & HAS_LOCATION) != 0) {
+            out.writeDouble(address.getLatitude());
+            out.writeDouble(address.getLongitude());
+        }
+        writeIf(out, mask, HAS_LOCALITY, address.getLocality());
+        writeIf(out, mask, HAS_SUB_LOCALITY, address.getSubLocality());
+        writeIf(out, mask, HAS_COUNTRY_CODE, address.getCountryCode());
+        writeIf(out, mask, HAS_COUNTRY_NAME, address.getCountryName());
+        writeIf(out, mask, HAS_ADMIN_AREA, address.getAdminArea());
+        writeIf(out, mask, HAS_SUB_ADMIN, address.getSubAdminArea());
+        writeIf(out, mask, HAS_POSTAL_CODE, address.getPostalCode());
+        writeIf(out, mask, HAS_ADDRESS_LINE, addressLine);
+        writeIf(out, mask, HAS_LOCATION_TYPE, locationType);
+    }
+
+    public static Address readAddress(DataInput in) throws IOException {
+        final int mask = in.readUnsignedShort();
+        Address address = new Address(Locale.getDefault());
+        if ((mask & HAS_LOCATION) != 0) {
+            address.setLatitude(in.readDouble());
+            address.setLongitude(in.readDouble());
+        }
+        if ((mask & HAS_LOCALITY) != 0) {
+            address.setLocality(in.readUTF());
+        }
+        if ((mask & HAS_SUB_LOCALITY) != 0) {
+            address.setSubLocality(in.readUTF());
+        }
+        if ((mask & HAS_COUNTRY_CODE) != 0) {
+            address.setCountryCode(in.readUTF());
+        }
+        if ((mask & HAS_COUNTRY_NAME) != 0) {
+            address.setCountryName(in.readUTF());
+        }
+        if ((mask & HAS_ADMIN_AREA) != 0) {
+            address.setAdminArea(in.readUTF());
+        }
+        if ((mask & HAS_SUB_ADMIN) != 0) {
+            address.setSubAdminArea(in.readUTF());
+        }
+        if ((mask & HAS_POSTAL_CODE) != 0) {
+            address.setPostalCode(in.readUTF());
+        }
+        if ((mask & HAS_ADDRESS_LINE) != 0) {
+            address.setAddressLine(0, in.readUTF());
+        }
+        if ((mask & HAS_LOCATION_TYPE) != 0) {
+            Bundle bundle = new Bundle();
+            bundle.putString(Geocoder.LOCATION_TYPE, in.readUTF());
+            address.setExtras(bundle);
+        }
+        return address;
+    }
+
+    public static void writeLocationInfo(DataOutput out, Geocoder.LocationInfo info) throws IOException {
+        int mask = 0;
+        if (null != info.getLatLngBounds()) {
+            mask |= HAS_BOUNDS;
+        }
+        if (null != info.getLatLngViewPort()) {
+            mask |= HAS_VIEWPORT;
+        }
+        if (null != info.getLatLng()) {
+            mask |= HAS_LAT_LNG;
+        }
+        out.writeByte(mask);
+        if ((mask & HAS_VIEWPORT) != 0) {
+            writeBounds(out, info.getLatLngViewPort());
+        }
+        if ((mask & HAS_LAT_LNG) != 0) {
+            writeLatLng(out, info.getLatLng());
+        }
+        if ((mask & HAS_BOUNDS) != 0) {
+            writeBounds(out, info.getLatLngBounds());
+        }
+    }
+
+    public static Geocoder.LocationInfo readLocationInfo(DataInput in) throws IOException {
+        final int mask = in.readUnsignedByte();
+        LatLngBounds viewPort = (mask & HAS_VIEWPORT) != 0 ? readBounds(in) : null;
+        LatLng latLng = (mask & HAS_LAT_LNG) != 0 ? readLatLng(in) : null;
+        LatLngBounds bounds = (mask & HAS_BOUNDS) != 0 ? readBounds(in) : null;
+        return new Geocoder.LocationInfo(viewPort, latLng, bounds);
+    }
+
+    private static int flag(@Nullable String value, int bit) {
+        return null != value ? bit : 0;
+    }
+
+    private static void writeIf(DataOutput out, int mask, int bit, String value) throws IOException {
+        if ((mask & bit) != 0) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static void writeLatLng(DataOutput out, LatLng latLng) throws IOException {
+        out.writeDouble(latLng.latitude);
+        out.writeDouble(latLng.longitude);
+    }
+
+    private static LatLng readLatLng(DataInput in) throws IOException {
+        return new LatLng(in.readDouble(), in.readDouble());
+    }
+
+    private static void writeBounds(DataOutput out, LatLngBounds bounds) throws IOException {
+        writeLatLng(out, bounds.southwest);
+        writeLatLng(out, bounds.northeast);
+    }
+
+    private static LatLngBounds readBounds(DataInput in) throws IOException {
+        LatLng southwest = readLatLng(in);
+        return new LatLngBounds(southwest, readLatLng(in));
+    }
+}
@@ -0,0 +1,184 @@
+package com.inqbarna.iqlocation.cache;
+
+import android.location.Address;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.util.GeoHash;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache for reverse geocoding results. Coordinates are quantized to a geohash cell, so fixes
+ * that fall in the same cell share the addresses resolved for the first of them.
+ * <p>
+ * Cached lists are shared between callers, they must be treated as read only.
+ */
+public class ReverseGeocodeCache {
+
+    public static final int  DEFAULT_PRECISION   = 8; // geohash cell of roughly 38m x 19m
+    public static final int  DEFAULT_MAX_ENTRIES = 128;
+    public static final long DEFAULT_TTL_MILLIS  = 60 * 60 * 1000; // 60 minutes in millis
+
+    private final int  precision;
+    private final int  maxEntries;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<ReverseGeocodeKey, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public static class Builder {
+        private int  precision  = DEFAULT_PRECISION;
+        private int  maxEntries = DEFAULT_MAX_ENTRIES;
+        private long ttlMillis  = DEFAULT_TTL_MILLIS;
+
+        /**
+         * @param precision geohash length used to quantize coordinates, between 1 and {@link GeoHash#MAX_PRECISION}
+         */
+        public Builder setPrecision(int precision) {
+            GeoHash.encode(0, 0, precision); // validates range
+            this.precision = precision;
+            return this;
+        }
+
+        /**
+         * Sets the precision from the largest cell size the results can be shared on, see
+         * {@link GeoHash#precisionFor(double)}
+         */
+        public Builder setCellSize(double meters) {
+            this.precision = GeoHash.precisionFor(meters);
+            return this;
+        }
+
+        public Builder setMaxEntries(int maxEntries) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Max entries must be positive");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder setTtl(long millis) {
+            this.ttlMillis = millis;
+            return this;
+        }
+
+        public ReverseGeocodeCache build() {
+            return new ReverseGeocodeCache(this);
+        }
+    }
+
+    private ReverseGeocodeCache(Builder builder) {
+        precision = builder.precision;
+        maxEntries = builder.maxEntries;
+        ttlMillis = builder.ttlMillis;
+        entries = new LinkedHashMap<ReverseGeocodeKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ReverseGeocodeKey, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the cell used to key coordinates on this cache
+     */
+    public long cellOf(double lat, double lng) {
+        return GeoHash.encode(lat, lng, precision);
+    }
+
+    @Nullable
+    public List<Address> get(double lat, double lng, int maxResults, String languageCode) {
+        return get(cellOf(lat, lng), maxResults, languageCode);
+    }
+
+    @Nullable
+    public synchronized List<Address> get(long cell, int maxResults, String languageCode) {
+        final ReverseGeocodeKey key = new ReverseGeocodeKey(cell, languageCode, maxResults);
+        Entry entry = entries.get(key);
+        if (null != entry && entry.expiresAt <= SystemClock.elapsedRealtime()) {
+            entries.remove(key);
+            evictionCount++;
+            entry = null;
+        }
+
+        if (null == entry) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.addresses;
+    }
+
+    public void put(double lat, double lng, int maxResults, String languageCode, List<Address> addresses) {
+        put(cellOf(lat, lng), maxResults, languageCode, addresses);
+    }
+
+    public synchronized void put(long cell, int maxResults, String languageCode, List<Address> addresses) {
+        entries.put(new ReverseGeocodeKey(cell, languageCode, maxResults), new Entry(Collections.unmodifiableList(addresses), SystemClock.elapsedRealtime() + ttlMillis));
+    }
+
+    /**
+     * Drops expired entries, they are otherwise removed lazily when looked up or pushed out by LRU order
+     */
+    public synchronized void trimExpired() {
+        final long now = SystemClock.elapsedRealtime();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReverseGeocodeCache{size=" + entries.size() + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "}";
+    }
+
+    private static final class Entry {
+        final List<Address> addresses;
+        final long          expiresAt;
+
+        Entry(List<Address> addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.inqbarna.iqlocation.cache;
+
+/**
+ * Identity of a reverse geocoding request once coordinates have been quantized to a cell
+ */
+public final class ReverseGeocodeKey {
+    final long   cell;
+    final String language;
+    final int    maxResults;
+
+    public ReverseGeocodeKey(long cell, String language, int maxResults) {
+        this.cell = cell;
+        this.language = language;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReverseGeocodeKey)) {
+            return false;
+        }
+        ReverseGeocodeKey key = (ReverseGeocodeKey) o;
+        return cell == key.cell && maxResults == key.maxResults
+                && (language == null ? key.language == null : language.equals(key.language));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (cell ^ (cell >>> 32));
+        result = 31 * result + (language != null ? language.hashCode() : 0);
+        result = 31 * result + maxResults;
+        return result;
+    }
+}
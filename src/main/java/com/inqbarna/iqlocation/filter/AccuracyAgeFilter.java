@@ -0,0 +1,48 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Drops locations less accurate than a threshold, or older than a given age like cached last locations can be
+ */
+public class AccuracyAgeFilter implements LocationFilter {
+
+    private final float maxAccuracyMeters;
+    private final long  maxAgeMillis;
+
+    /**
+     * @param maxAccuracyMeters largest accepted accuracy radius, locations without accuracy are accepted
+     * @param maxAgeMillis      oldest accepted location, zero or less to accept any
+     */
+    public AccuracyAgeFilter(float maxAccuracyMeters, long maxAgeMillis) {
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Nullable
+    @Override
+    public Location filter(@NonNull Location location) {
+        if (location.hasAccuracy() && location.getAccuracy() > maxAccuracyMeters) {
+            return null;
+        }
+        if (maxAgeMillis > 0 && ageMillis(location) > maxAgeMillis) {
+            return null;
+        }
+        return location;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    private static long ageMillis(Location location) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1000000;
+        }
+        return System.currentTimeMillis() - location.getTime();
+    }
+}
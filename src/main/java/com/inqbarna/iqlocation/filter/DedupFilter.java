@@ -0,0 +1,69 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+/**
+ * Drops locations within a distance and a time of the last accepted one, so a stationary device does not keep
+ * delivering the same position every interval.
+ * <p>
+ * Comparisons work on the squared equirectangular distance in radians against a threshold computed once, and the
+ * cosine of the last latitude is kept with it, so they take a few multiplications and no allocation.
+ */
+public class DedupFilter implements LocationFilter {
+
+    private final double thresholdSq;
+    private final long   windowMillis;
+
+    private boolean hasLast;
+    private double  lastLatRadians;
+    private double  lastLngRadians;
+    private double  lastCosLat;
+    private long    lastTime;
+
+    /**
+     * @param distanceMeters locations closer than this to the last accepted one are duplicates...
+     * @param windowMillis   ...if they come within this time of it, zero or less to drop them however late they come
+     */
+    public DedupFilter(float distanceMeters, long windowMillis) {
+        final double threshold = distanceMeters / Geodesy.EARTH_RADIUS_METERS;
+        this.thresholdSq = threshold * threshold;
+        this.windowMillis = windowMillis;
+    }
+
+    @Nullable
+    @Override
+    public Location filter(@NonNull Location location) {
+        final double latRadians = Math.toRadians(location.getLatitude());
+        final double lngRadians = Math.toRadians(location.getLongitude());
+
+        if (hasLast && (windowMillis <= 0 || location.getTime() - lastTime < windowMillis)) {
+            double dLng = lngRadians - lastLngRadians;
+            if (dLng > Math.PI) {
+                dLng -= 2 * Math.PI;
+            } else if (dLng < -Math.PI) {
+                dLng += 2 * Math.PI;
+            }
+            final double x = dLng * lastCosLat;
+            final double y = latRadians - lastLatRadians;
+            if (x * x + y * y < thresholdSq) {
+                return null;
+            }
+        }
+
+        hasLast = true;
+        lastLatRadians = latRadians;
+        lastLngRadians = lngRadians;
+        lastCosLat = Math.cos(latRadians);
+        lastTime = location.getTime();
+        return location;
+    }
+
+    @Override
+    public void reset() {
+        hasLast = false;
+    }
+}
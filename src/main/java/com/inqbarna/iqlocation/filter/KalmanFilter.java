@@ -0,0 +1,75 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+/**
+ * Smooths positions with a constant position Kalman filter, each new fix weighted by its accuracy against the
+ * uncertainty accumulated since the last one. The given location may be shared, so each smoothed one is a copy of it
+ * with the filtered position and accuracy, the only allocation per fix. Longitudes are smoothed across the
+ * antimeridian, not around the globe.
+ */
+public class KalmanFilter implements LocationFilter {
+
+    public static final float DEFAULT_PROCESS_NOISE = 3; // meters per second
+    private static final float MIN_ACCURACY = 1;
+
+    private final float processNoise;
+
+    private double latitude;
+    private double longitude;
+    private double variance = -1;
+    private long   time;
+
+    public KalmanFilter() {
+        this(DEFAULT_PROCESS_NOISE);
+    }
+
+    /**
+     * @param processNoiseMetersPerSecond how fast the position is expected to move, the higher the less smoothing
+     */
+    public KalmanFilter(float processNoiseMetersPerSecond) {
+        this.processNoise = processNoiseMetersPerSecond;
+    }
+
+    @Nullable
+    @Override
+    public Location filter(@NonNull Location location) {
+        final float accuracy = Math.max(MIN_ACCURACY, location.hasAccuracy() ? location.getAccuracy() : MIN_ACCURACY);
+        final double measurementVariance = accuracy * accuracy;
+
+        if (variance < 0) {
+            latitude = location.getLatitude();
+            longitude = location.getLongitude();
+            variance = measurementVariance;
+            time = location.getTime();
+            return location;
+        }
+
+        final long elapsed = location.getTime() - time;
+        if (elapsed > 0) {
+            variance += elapsed * processNoise * processNoise / 1000.0;
+            time = location.getTime();
+        }
+
+        final double gain = variance / (variance + measurementVariance);
+        latitude += gain * (location.getLatitude() - latitude);
+        longitude = Geodesy.wrapLongitude(longitude + gain * Geodesy.wrapLongitude(location.getLongitude() - longitude));
+        variance = (1 - gain) * variance;
+
+        // a copy, the given location may be shared with whoever delivered it
+        Location smoothed = new Location(location);
+        smoothed.setLatitude(latitude);
+        smoothed.setLongitude(longitude);
+        smoothed.setAccuracy((float) Math.sqrt(variance));
+        return smoothed;
+    }
+
+    @Override
+    public void reset() {
+        variance = -1;
+    }
+}
@@ -0,0 +1,26 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Stage run by {@link com.inqbarna.iqlocation.LocationHelper} on every new location before handing it to
+ * subscribers, so each of them does not have to filter them again. Calls are never concurrent.
+ *
+ * @see LocationFilters
+ */
+public interface LocationFilter {
+
+    /**
+     * @param location new location, as delivered by the backend and possibly shared, return a copy to change it
+     * @return the location to deliver, or null to drop it
+     */
+    @Nullable
+    Location filter(@NonNull Location location);
+
+    /**
+     * Forgets any state kept from previous locations, called when updates stop
+     */
+    void reset();
+}
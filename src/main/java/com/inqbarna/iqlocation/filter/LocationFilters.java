@@ -0,0 +1,48 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Factory of common filters
+ */
+public final class LocationFilters {
+
+    private LocationFilters() {
+    }
+
+    /**
+     * @return a filter running the given ones in order, a location dropped by one does not reach the next
+     */
+    public static LocationFilter chain(@NonNull final LocationFilter... filters) {
+        return new LocationFilter() {
+            @Nullable
+            @Override
+            public Location filter(@NonNull Location location) {
+                Location current = location;
+                for (int i = 0; i < filters.length && null != current; i++) {
+                    current = filters[i].filter(current);
+                }
+                return current;
+            }
+
+            @Override
+            public void reset() {
+                for (LocationFilter filter : filters) {
+                    filter.reset();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return accuracy and age gating, then spike rejection and smoothing, tuned for people moving on foot or by car
+     */
+    public static LocationFilter standard() {
+        return chain(
+                new AccuracyAgeFilter(100, 2 * 60 * 1000),
+                new SpikeFilter(70),
+                new KalmanFilter());
+    }
+}
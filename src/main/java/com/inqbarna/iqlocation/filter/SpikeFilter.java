@@ -0,0 +1,70 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+/**
+ * Rejects locations that would mean moving faster than possible from the last accepted one, like the jumps
+ * between wifi and gps positions. After a number of consecutive rejections the new position is accepted, so a
+ * real relocation (or a wrong first fix) does not get the filter stuck.
+ */
+public class SpikeFilter implements LocationFilter {
+
+    public static final int DEFAULT_MAX_REJECTIONS = 3;
+
+    private final float maxSpeedMetersPerSecond;
+    private final int   maxRejections;
+
+    private double  lastLatitude;
+    private double  lastLongitude;
+    private long    lastTime;
+    private float   lastAccuracy;
+    private boolean hasLast;
+    private int     rejections;
+
+    public SpikeFilter(float maxSpeedMetersPerSecond) {
+        this(maxSpeedMetersPerSecond, DEFAULT_MAX_REJECTIONS);
+    }
+
+    /**
+     * @param maxSpeedMetersPerSecond fastest movement considered real
+     * @param maxRejections           consecutive rejections after which the new position is taken
+     */
+    public SpikeFilter(float maxSpeedMetersPerSecond, int maxRejections) {
+        this.maxSpeedMetersPerSecond = maxSpeedMetersPerSecond;
+        this.maxRejections = maxRejections;
+    }
+
+    @Nullable
+    @Override
+    public Location filter(@NonNull Location location) {
+        if (hasLast && rejections < maxRejections) {
+            final double seconds = Math.max(1, location.getTime() - lastTime) / 1000.0;
+            // accuracy of both ends is allowed as slack, so noise on a slow walk is not taken as a jump
+            final double slack = lastAccuracy + (location.hasAccuracy() ? location.getAccuracy() : 0);
+            final double distance = Geodesy.equirectangular(lastLatitude, lastLongitude, location.getLatitude(), location.getLongitude());
+            if (distance - slack > maxSpeedMetersPerSecond * seconds) {
+                rejections++;
+                return null;
+            }
+        }
+
+        hasLast = true;
+        rejections = 0;
+        lastLatitude = location.getLatitude();
+        lastLongitude = location.getLongitude();
+        lastTime = location.getTime();
+        lastAccuracy = location.hasAccuracy() ? location.getAccuracy() : 0;
+        return location;
+    }
+
+    @Override
+    public void reset() {
+        hasLast = false;
+        rejections = 0;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.inqbarna.iqlocation.geofence;
+
+import android.support.annotation.NonNull;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+/**
+ * Area monitored by a {@link GeofenceEngine}, a circle or a simple polygon. Circles may cross the antimeridian,
+ * polygons crossing it are not supported.
+ */
+public abstract class Geofence {
+
+    private final String id;
+
+    final double minLat;
+    final double maxLat;
+    final double minLng;
+    final double maxLng;
+
+    private Geofence(String id, double minLat, double maxLat, double minLng, double maxLng) {
+        this.id = id;
+        this.minLat = minLat;
+        this.maxLat = maxLat;
+        this.minLng = minLng;
+        this.maxLng = maxLng;
+    }
+
+    public static Geofence circle(@NonNull String id, double lat, double lng, float radiusMeters) {
+        return new Circle(id, lat, lng, radiusMeters);
+    }
+
+    /**
+     * @param lats latitudes of the vertices, in order
+     * @param lngs longitudes of the vertices, in the same order
+     */
+    public static Geofence polygon(@NonNull String id, @NonNull double[] lats, @NonNull double[] lngs) {
+        if (lats.length != lngs.length || lats.length < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices with both coordinates");
+        }
+        return new Polygon(id, lats.clone(), lngs.clone());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public abstract boolean contains(double lat, double lng);
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{id=" + id + "}";
+    }
+
+    private static final class Circle extends Geofence {
+        private final double lat;
+        private final double lng;
+        private final double metersPerLngDegree;
+        private final double radiusSq;
+
+        Circle(String id, double lat, double lng, float radiusMeters) {
+            super(id,
+                  lat - Geodesy.latitudeDelta(radiusMeters),
+                  lat + Geodesy.latitudeDelta(radiusMeters),
+                  lng - Geodesy.longitudeDelta(lat, radiusMeters),
+                  lng + Geodesy.longitudeDelta(lat, radiusMeters));
+            this.lat = lat;
+            this.lng = lng;
+            this.metersPerLngDegree = Geodesy.metersPerLongitudeDegree(lat);
+            this.radiusSq = (double) radiusMeters * radiusMeters;
+        }
+
+        @Override
+        public boolean contains(double lat, double lng) {
+            final double dy = (lat - this.lat) * Geodesy.METERS_PER_DEGREE;
+            final double dx = Geodesy.wrapLongitude(lng - this.lng) * metersPerLngDegree;
+            return dx * dx + dy * dy <= radiusSq;
+        }
+    }
+
+    private static final class Polygon extends Geofence {
+        private final double[] lats;
+        private final double[] lngs;
+
+        Polygon(String id, double[] lats, double[] lngs) {
+            super(id, min(lats), max(lats), min(lngs), max(lngs));
+            this.lats = lats;
+            this.lngs = lngs;
+        }
+
+        @Override
+        public boolean contains(double lat, double lng) {
+            if (lat < minLat || lat > maxLat || lng < minLng || lng > maxLng) {
+                return false;
+            }
+            // ray casting, counting the edges crossed by a ray going east from the point
+            boolean inside = false;
+            for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+                if ((lats[i] > lat) != (lats[j] > lat)
+                        && lng < (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+
+        private static double min(double[] values) {
+            double min = values[0];
+            for (double value : values) {
+                min = Math.min(min, value);
+            }
+            return min;
+        }
+
+        private static double max(double[] values) {
+            double max = values[0];
+            for (double value : values) {
+                max = Math.max(max, value);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.inqbarna.iqlocation.geofence;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.Function;
+
+/**
+ * Evaluates any number of {@link Geofence}s on device, without the limit play services puts on registered ones.
+ * <p>
+ * Fences are indexed on a grid of fixed size cells, each cell listing the fences whose bounding box overlaps it.
+ * A location is only tested against the fences of its own cell plus the ones it is already inside, so the cost of
+ * a fix does not grow with the number of fences registered elsewhere. Fences covering too many cells are kept
+ * aside and tested on every fix.
+ * <p>
+ * Transition state is kept by the engine, so it should evaluate a single location stream.
+ */
+public class GeofenceEngine {
+
+    public static final double DEFAULT_CELL_DEGREES      = 0.01; // about 1.1 km of latitude
+    public static final long   DEFAULT_DWELL_TIME_MILLIS = 5 * 60 * 1000; // 5 minutes in millis
+
+    private static final int MAX_CELLS_PER_FENCE = 256;
+
+    private final double cellDegrees;
+    private final long   dwellTimeMillis;
+
+    private final HashMap<Long, ArrayList<Geofence>> grid      = new HashMap<>();
+    private final ArrayList<Geofence>                large     = new ArrayList<>();
+    private final HashMap<String, Geofence>          byId      = new HashMap<>();
+    private final ArrayList<Inside>                  inside    = new ArrayList<>();
+    private final HashSet<Geofence>                  insideSet = new HashSet<>();
+
+    public static class Builder {
+        private double cellDegrees     = DEFAULT_CELL_DEGREES;
+        private long   dwellTimeMillis = DEFAULT_DWELL_TIME_MILLIS;
+
+        /**
+         * @param degrees side of the grid cells, better around the size of the typical fence
+         */
+        public Builder setCellSize(double degrees) {
+            if (degrees <= 0) {
+                throw new IllegalArgumentException("Cell size must be positive");
+            }
+            this.cellDegrees = degrees;
+            return this;
+        }
+
+        /**
+         * @param millis time inside a fence after which a {@link GeofenceEvent#DWELL} event is emitted
+         */
+        public Builder setDwellTime(long millis) {
+            this.dwellTimeMillis = millis;
+            return this;
+        }
+
+        public GeofenceEngine build() {
+            return new GeofenceEngine(this);
+        }
+    }
+
+    private GeofenceEngine(Builder builder) {
+        cellDegrees = builder.cellDegrees;
+        dwellTimeMillis = builder.dwellTimeMillis;
+    }
+
+    /**
+     * Registers the fence, replacing any other with the same id
+     */
+    public synchronized void add(@NonNull Geofence geofence) {
+        remove(geofence.getId());
+        byId.put(geofence.getId(), geofence);
+
+        final double[] lngRanges = longitudeRanges(geofence);
+        long columns = 0;
+        for (int i = 0; i < lngRanges.length; i += 2) {
+            columns += column(lngRanges[i + 1]) - column(lngRanges[i]) + 1;
+        }
+        if ((row(geofence.maxLat) - row(geofence.minLat) + 1) * columns > MAX_CELLS_PER_FENCE) {
+            large.add(geofence);
+            return;
+        }
+        for (int i = 0; i < lngRanges.length; i += 2) {
+            for (int r = row(geofence.minLat); r <= row(geofence.maxLat); r++) {
+                for (int c = column(lngRanges[i]); c <= column(lngRanges[i + 1]); c++) {
+                    final long key = cellKey(r, c);
+                    ArrayList<Geofence> cell = grid.get(key);
+                    if (null == cell) {
+                        cell = new ArrayList<>(4);
+                        grid.put(key, cell);
+                    }
+                    cell.add(geofence);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters the fence, no exit event is emitted for it
+     */
+    public synchronized void remove(@NonNull String id) {
+        final Geofence geofence = byId.remove(id);
+        if (null == geofence) {
+            return;
+        }
+        if (!large.remove(geofence)) {
+            final double[] lngRanges = longitudeRanges(geofence);
+            for (int i = 0; i < lngRanges.length; i += 2) {
+                for (int r = row(geofence.minLat); r <= row(geofence.maxLat); r++) {
+                    for (int c = column(lngRanges[i]); c <= column(lngRanges[i + 1]); c++) {
+                        final long key = cellKey(r, c);
+                        ArrayList<Geofence> cell = grid.get(key);
+                        if (null != cell) {
+                            cell.remove(geofence);
+                            if (cell.isEmpty()) {
+                                grid.remove(key);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (insideSet.remove(geofence)) {
+            for (int i = 0; i < inside.size(); i++) {
+                if (inside.get(i).geofence == geofence) {
+                    removeInside(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return fences the last evaluated location was inside of
+     */
+    public synchronized List<Geofence> getInside() {
+        List<Geofence> result = new ArrayList<>(inside.size());
+        for (Inside entry : inside) {
+            result.add(entry.geofence);
+        }
+        return result;
+    }
+
+    /**
+     * @return the transitions caused by the new location, in no particular order
+     */
+    @NonNull
+    public synchronized List<GeofenceEvent> evaluate(@NonNull Location location) {
+        final double lat = location.getLatitude();
+        final double lng = location.getLongitude();
+        final long time = location.getTime();
+        List<GeofenceEvent> events = null;
+
+        for (int i = inside.size() - 1; i >= 0; i--) {
+            final Inside entry = inside.get(i);
+            if (!entry.geofence.contains(lat, lng)) {
+                removeInside(i);
+                insideSet.remove(entry.geofence);
+                events = add(events, new GeofenceEvent(GeofenceEvent.EXIT, entry.geofence, location));
+            } else if (!entry.dwelled && time - entry.enteredAt >= dwellTimeMillis) {
+                entry.dwelled = true;
+                events = add(events, new GeofenceEvent(GeofenceEvent.DWELL, entry.geofence, location));
+            }
+        }
+
+        final ArrayList<Geofence> cell = grid.get(cellKey(row(lat), column(lng)));
+        if (null != cell) {
+            events = enter(cell, location, events);
+        }
+        if (!large.isEmpty()) {
+            events = enter(large, location, events);
+        }
+
+        return null != events ? events : Collections.<GeofenceEvent>emptyList();
+    }
+
+    /**
+     * @return the events caused by each location of the given stream
+     */
+    public Observable<GeofenceEvent> monitor(@NonNull Observable<Location> locations) {
+        return locations.flatMapIterable(
+                new Function<Location, Iterable<GeofenceEvent>>() {
+                    @Override
+                    public Iterable<GeofenceEvent> apply(Location location) {
+                        return evaluate(location);
+                    }
+                });
+    }
+
+    private List<GeofenceEvent> enter(ArrayList<Geofence> candidates, Location location, List<GeofenceEvent> events) {
+        final double lat = location.getLatitude();
+        final double lng = location.getLongitude();
+        for (int i = 0; i < candidates.size(); i++) {
+            final Geofence geofence = candidates.get(i);
+            if (!insideSet.contains(geofence) && geofence.contains(lat, lng)) {
+                insideSet.add(geofence);
+                inside.add(new Inside(geofence, location.getTime()));
+                events = add(events, new GeofenceEvent(GeofenceEvent.ENTER, geofence, location));
+            }
+        }
+        return events;
+    }
+
+    private void removeInside(int index) {
+        final int last = inside.size() - 1;
+        inside.set(index, inside.get(last));
+        inside.remove(last);
+    }
+
+    private static List<GeofenceEvent> add(List<GeofenceEvent> events, GeofenceEvent event) {
+        if (null == events) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+
+    /**
+     * @return pairs of min and max longitude covered by the fence box, split in two when it goes past the
+     * antimeridian so each part is indexed on its own side
+     */
+    private static double[] longitudeRanges(Geofence geofence) {
+        if (geofence.maxLng - geofence.minLng >= 360) {
+            return new double[]{-180, 180};
+        } else if (geofence.minLng < -180) {
+            return new double[]{-180, geofence.maxLng, geofence.minLng + 360, 180};
+        } else if (geofence.maxLng > 180) {
+            return new double[]{geofence.minLng, 180, -180, geofence.maxLng - 360};
+        }
+        return new double[]{geofence.minLng, geofence.maxLng};
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((lat + 90) / cellDegrees);
+    }
+
+    private int column(double lng) {
+        return (int) Math.floor((lng + 180) / cellDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static final class Inside {
+        final Geofence geofence;
+        final long     enteredAt;
+        boolean        dwelled;
+
+        Inside(Geofence geofence, long enteredAt) {
+            this.geofence = geofence;
+            this.enteredAt = enteredAt;
+        }
+    }
+}
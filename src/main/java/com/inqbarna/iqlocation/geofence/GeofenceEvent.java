@@ -0,0 +1,46 @@
+package com.inqbarna.iqlocation.geofence;
+
+import android.location.Location;
+
+/**
+ * Transition of the device on a {@link Geofence}
+ */
+public class GeofenceEvent {
+
+    public static final int ENTER = 1;
+    public static final int EXIT  = 2;
+    public static final int DWELL = 4;
+
+    private final int      type;
+    private final Geofence geofence;
+    private final Location location;
+
+    GeofenceEvent(int type, Geofence geofence, Location location) {
+        this.type = type;
+        this.geofence = geofence;
+        this.location = location;
+    }
+
+    /**
+     * @return one of {@link #ENTER}, {@link #EXIT} or {@link #DWELL}
+     */
+    public int getType() {
+        return type;
+    }
+
+    public Geofence getGeofence() {
+        return geofence;
+    }
+
+    /**
+     * @return the location that triggered the event
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return "GeofenceEvent{type=" + (type == ENTER ? "ENTER" : type == EXIT ? "EXIT" : "DWELL") + ", geofence=" + geofence.getId() + "}";
+    }
+}
@@ -0,0 +1,152 @@
+package com.inqbarna.iqlocation.offline;
+
+import android.support.annotation.NonNull;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Place index kept on the heap, places are sorted by latitude so a nearest lookup only scans the latitude band
+ * the search radius covers.
+ */
+public class InMemoryPlaceIndex implements PlaceIndex {
+
+    private final Place[]              places;
+    private final double[]             latitudes;
+    private final Map<String, Integer> byName;
+
+    public InMemoryPlaceIndex(@NonNull List<Place> places) {
+        List<Place> sorted = new ArrayList<>(places);
+        Collections.sort(sorted, new Comparator<Place>() {
+            @Override
+            public int compare(Place a, Place b) {
+                return Double.compare(a.getLatitude(), b.getLatitude());
+            }
+        });
+
+        this.places = sorted.toArray(new Place[sorted.size()]);
+        latitudes = new double[this.places.length];
+        byName = new HashMap<>();
+        for (int i = 0; i < this.places.length; i++) {
+            latitudes[i] = this.places[i].getLatitude();
+            final String locality = this.places[i].getLocality();
+            if (null != locality && !byName.containsKey(normalize(locality))) {
+                byName.put(normalize(locality), i);
+            }
+        }
+    }
+
+    /**
+     * Reads places from tab separated lines: <code>lat lng radius locality subAdminArea adminArea countryCode countryName postalCode</code>,
+     * empty columns are allowed and lines starting with # are skipped
+     */
+    public static InMemoryPlaceIndex load(InputStream in) throws IOException {
+        List<Place> places = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] columns = line.split("\t", -1);
+                if (columns.length < 2) {
+                    throw new IOException("Invalid place line: " + line);
+                }
+                try {
+                    Place.Builder builder = new Place.Builder(Double.parseDouble(columns[0]), Double.parseDouble(columns[1]));
+                    if (columns.length > 2 && !columns[2].isEmpty()) {
+                        builder.setRadius(Float.parseFloat(columns[2]));
+                    }
+                    places.add(builder.setLocality(column(columns, 3))
+                                      .setSubAdminArea(column(columns, 4))
+                                      .setAdminArea(column(columns, 5))
+                                      .setCountryCode(column(columns, 6))
+                                      .setCountryName(column(columns, 7))
+                                      .setPostalCode(column(columns, 8))
+                                      .build());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid place line: " + line, e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new InMemoryPlaceIndex(places);
+    }
+
+    @Override
+    public int size() {
+        return places.length;
+    }
+
+    @Override
+    public Place get(int ordinal) {
+        return places[ordinal];
+    }
+
+    @Override
+    public int nearest(double lat, double lng, double maxDistanceMeters, int[] out) {
+        if (out.length == 0 || places.length == 0) {
+            return 0;
+        }
+
+        final double band = Geodesy.latitudeDelta(maxDistanceMeters);
+        int from = Arrays.binarySearch(latitudes, lat - band);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        while (from > 0 && latitudes[from - 1] >= lat - band) {
+            from--;
+        }
+
+        final double metersPerLngDegree = Geodesy.metersPerLongitudeDegree(lat);
+        final double maxDistanceSq = maxDistanceMeters * maxDistanceMeters;
+        double[] best = new double[out.length];
+        int count = 0;
+        for (int i = from; i < places.length && latitudes[i] <= lat + band; i++) {
+            final double dy = (latitudes[i] - lat) * Geodesy.METERS_PER_DEGREE;
+            final double dx = Geodesy.wrapLongitude(places[i].getLongitude() - lng) * metersPerLngDegree;
+            final double distanceSq = dx * dx + dy * dy;
+            if (distanceSq > maxDistanceSq || (count == out.length && distanceSq >= best[count - 1])) {
+                continue;
+            }
+
+            int pos = count < out.length ? count++ : count - 1;
+            while (pos > 0 && best[pos - 1] > distanceSq) {
+                best[pos] = best[pos - 1];
+                out[pos] = out[pos - 1];
+                pos--;
+            }
+            best[pos] = distanceSq;
+            out[pos] = i;
+        }
+        return count;
+    }
+
+    @Override
+    public int findByName(String name) {
+        Integer ordinal = byName.get(normalize(name));
+        return null != ordinal ? ordinal : -1;
+    }
+
+    static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String column(String[] columns, int index) {
+        return index < columns.length && !columns[index].isEmpty() ? columns[index] : null;
+    }
+}
@@ -0,0 +1,252 @@
+package com.inqbarna.iqlocation.offline;
+
+import android.support.annotation.NonNull;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read only place index memory mapped from a file written by {@link PlaceIndexWriter}. Places are laid out as an
+ * implicit k-d tree, the node of any range being its middle element and levels alternating latitude and longitude
+ * splits, so nothing but the mapping itself is loaded in the heap and nearest lookups allocate nothing.
+ * <p>
+ * Distances use an equirectangular projection around the query point, as {@link InMemoryPlaceIndex} does. The tree
+ * is split on raw longitudes, so a lookup whose radius reaches the antimeridian searches it again with the query a
+ * turn away to find the places across it.
+ */
+public class MappedPlaceIndex implements PlaceIndex {
+
+    static final int MAGIC   = 0x49515049; // IQPI
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 20;
+    static final int NODE_BYTES   = 16;
+    static final int NAME_BYTES   = 8;
+    static final int FIELDS       = 6;
+    static final int NULL_FIELD   = 0xffff;
+
+    static final double FIXED_POINT = 1e6;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<Search> SEARCH = new ThreadLocal<Search>() {
+        @Override
+        protected Search initialValue() {
+            return new Search();
+        }
+    };
+
+    private final ByteBuffer buffer;
+    private final int        count;
+    private final int        nameCount;
+    private final int        namesOffset;
+    private final int        stringsOffset;
+
+    private MappedPlaceIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a place index, or unsupported version");
+        }
+        count = buffer.getInt(8);
+        namesOffset = buffer.getInt(12);
+        stringsOffset = buffer.getInt(16);
+        nameCount = buffer.getInt(namesOffset);
+    }
+
+    public static MappedPlaceIndex open(@NonNull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new MappedPlaceIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * @param buffer index contents, for instance read from an asset that cannot be mapped
+     */
+    public static MappedPlaceIndex wrap(@NonNull ByteBuffer buffer) throws IOException {
+        return new MappedPlaceIndex(buffer.duplicate());
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public Place get(int ordinal) {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IndexOutOfBoundsException("No place " + ordinal + ", size " + count);
+        }
+        final int node = HEADER_BYTES + ordinal * NODE_BYTES;
+        int position = stringsOffset + buffer.getInt(node + 12);
+
+        String[] fields = new String[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            final int length = buffer.getShort(position) & 0xffff;
+            position += 2;
+            if (length != NULL_FIELD) {
+                byte[] bytes = new byte[length];
+                for (int b = 0; b < length; b++) {
+                    bytes[b] = buffer.get(position + b);
+                }
+                fields[i] = new String(bytes, UTF_8);
+                position += length;
+            }
+        }
+
+        return new Place.Builder(latitude(ordinal), longitude(ordinal))
+                .setRadius(buffer.getFloat(node + 8))
+                .setLocality(fields[0])
+                .setSubAdminArea(fields[1])
+                .setAdminArea(fields[2])
+                .setCountryCode(fields[3])
+                .setCountryName(fields[4])
+                .setPostalCode(fields[5])
+                .build();
+    }
+
+    @Override
+    public int nearest(double lat, double lng, double maxDistanceMeters, int[] out) {
+        if (out.length == 0 || count == 0) {
+            return 0;
+        }
+        final Search search = SEARCH.get();
+        search.reset(lat, lng, maxDistanceMeters, out);
+        search(search, 0, count, 0);
+        final double antimeridianMeters = (180 - Math.abs(lng)) * search.metersPerLngDegree;
+        if (antimeridianMeters * antimeridianMeters < search.worst()) {
+            search.lng = lng > 0 ? lng - 360 : lng + 360;
+            search.across = true;
+            search(search, 0, count, 0);
+        }
+        search.out = null;
+        return search.found;
+    }
+
+    private void search(Search search, int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final double nodeLat = latitude(mid);
+        final double nodeLng = longitude(mid);
+
+        // not wrapped, pruning compares against splits on raw longitudes
+        final double dLng = nodeLng - search.lng;
+        final double dy = (nodeLat - search.lat) * Geodesy.METERS_PER_DEGREE;
+        final double dx = dLng * search.metersPerLngDegree;
+        // each place is offered once, by the pass that sees it no more than half a turn away
+        if (search.across ? Math.abs(dLng) < 180 : Math.abs(dLng) <= 180) {
+            search.offer(mid, dx * dx + dy * dy);
+        }
+
+        final double split = (depth & 1) == 0 ? dy : dx;
+        if (split > 0) {
+            search(search, lo, mid, depth + 1);
+            if (split * split < search.worst()) {
+                search(search, mid + 1, hi, depth + 1);
+            }
+        } else {
+            search(search, mid + 1, hi, depth + 1);
+            if (split * split < search.worst()) {
+                search(search, lo, mid, depth + 1);
+            }
+        }
+    }
+
+    @Override
+    public int findByName(String name) {
+        final String normalized = InMemoryPlaceIndex.normalize(name);
+        final int hash = normalized.hashCode();
+
+        int lo = 0;
+        int hi = nameCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int midHash = buffer.getInt(namesOffset + 4 + mid * NAME_BYTES);
+            if (midHash < hash) {
+                lo = mid + 1;
+            } else if (midHash > hash) {
+                hi = mid - 1;
+            } else {
+                // walk back to the first entry with this hash, then check every collision
+                int first = mid;
+                while (first > 0 && buffer.getInt(namesOffset + 4 + (first - 1) * NAME_BYTES) == hash) {
+                    first--;
+                }
+                for (int i = first; i < nameCount && buffer.getInt(namesOffset + 4 + i * NAME_BYTES) == hash; i++) {
+                    final int ordinal = buffer.getInt(namesOffset + 8 + i * NAME_BYTES);
+                    final String locality = get(ordinal).getLocality();
+                    if (null != locality && InMemoryPlaceIndex.normalize(locality).equals(normalized)) {
+                        return ordinal;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private double latitude(int ordinal) {
+        return buffer.getInt(HEADER_BYTES + ordinal * NODE_BYTES) / FIXED_POINT;
+    }
+
+    private double longitude(int ordinal) {
+        return buffer.getInt(HEADER_BYTES + ordinal * NODE_BYTES + 4) / FIXED_POINT;
+    }
+
+    /**
+     * Per thread search state, reused so lookups do not allocate
+     */
+    private static final class Search {
+        double   lat;
+        double   lng;
+        double   metersPerLngDegree;
+        double   maxDistanceSq;
+        int[]    out;
+        double[] best = new double[16];
+        int      found;
+        boolean  across;
+
+        void reset(double lat, double lng, double maxDistanceMeters, int[] out) {
+            this.lat = lat;
+            this.lng = lng;
+            metersPerLngDegree = Geodesy.metersPerLongitudeDegree(lat);
+            maxDistanceSq = maxDistanceMeters * maxDistanceMeters;
+            this.out = out;
+            found = 0;
+            across = false;
+            if (best.length < out.length) {
+                best = new double[out.length];
+            }
+        }
+
+        double worst() {
+            return found < out.length ? maxDistanceSq : best[found - 1];
+        }
+
+        void offer(int ordinal, double distanceSq) {
+            if (distanceSq > maxDistanceSq || (found == out.length && distanceSq >= best[found - 1])) {
+                return;
+            }
+            int pos = found < out.length ? found++ : found - 1;
+            while (pos > 0 && best[pos - 1] > distanceSq) {
+                best[pos] = best[pos - 1];
+                out[pos] = out[pos - 1];
+                pos--;
+            }
+            best[pos] = distanceSq;
+            out[pos] = ordinal;
+        }
+    }
+}
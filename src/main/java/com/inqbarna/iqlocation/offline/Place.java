@@ -0,0 +1,150 @@
+package com.inqbarna.iqlocation.offline;
+
+import android.location.Address;
+import android.support.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * A named place of the offline index, with the same fields the {@link com.inqbarna.iqlocation.Geocoder} fills on
+ * the addresses it returns, plus an approximate radius used to build its viewport.
+ */
+public final class Place {
+    private final double latitude;
+    private final double longitude;
+    private final float  radiusMeters;
+    private final String locality;
+    private final String subAdminArea;
+    private final String adminArea;
+    private final String countryCode;
+    private final String countryName;
+    private final String postalCode;
+
+    public static class Builder {
+        private double latitude;
+        private double longitude;
+        private float  radiusMeters;
+        private String locality;
+        private String subAdminArea;
+        private String adminArea;
+        private String countryCode;
+        private String countryName;
+        private String postalCode;
+
+        public Builder(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public Builder setRadius(float meters) {
+            this.radiusMeters = meters;
+            return this;
+        }
+
+        public Builder setLocality(String locality) {
+            this.locality = locality;
+            return this;
+        }
+
+        public Builder setSubAdminArea(String subAdminArea) {
+            this.subAdminArea = subAdminArea;
+            return this;
+        }
+
+        public Builder setAdminArea(String adminArea) {
+            this.adminArea = adminArea;
+            return this;
+        }
+
+        public Builder setCountryCode(String countryCode) {
+            this.countryCode = countryCode;
+            return this;
+        }
+
+        public Builder setCountryName(String countryName) {
+            this.countryName = countryName;
+            return this;
+        }
+
+        public Builder setPostalCode(String postalCode) {
+            this.postalCode = postalCode;
+            return this;
+        }
+
+        public Place build() {
+            return new Place(this);
+        }
+    }
+
+    private Place(Builder builder) {
+        latitude = builder.latitude;
+        longitude = builder.longitude;
+        radiusMeters = builder.radiusMeters;
+        locality = builder.locality;
+        subAdminArea = builder.subAdminArea;
+        adminArea = builder.adminArea;
+        countryCode = builder.countryCode;
+        countryName = builder.countryName;
+        postalCode = builder.postalCode;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getRadius() {
+        return radiusMeters;
+    }
+
+    @Nullable
+    public String getLocality() {
+        return locality;
+    }
+
+    @Nullable
+    public String getSubAdminArea() {
+        return subAdminArea;
+    }
+
+    @Nullable
+    public String getAdminArea() {
+        return adminArea;
+    }
+
+    @Nullable
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    @Nullable
+    public String getCountryName() {
+        return countryName;
+    }
+
+    @Nullable
+    public String getPostalCode() {
+        return postalCode;
+    }
+
+    public Address toAddress(Locale locale) {
+        Address address = new Address(locale);
+        address.setLatitude(latitude);
+        address.setLongitude(longitude);
+        address.setLocality(locality);
+        address.setSubAdminArea(subAdminArea);
+        address.setAdminArea(adminArea);
+        address.setCountryCode(countryCode);
+        address.setCountryName(countryName);
+        address.setPostalCode(postalCode);
+        return address;
+    }
+
+    @Override
+    public String toString() {
+        return "Place{" + locality + ", " + adminArea + ", " + countryCode + " @" + latitude + "," + longitude + "}";
+    }
+}
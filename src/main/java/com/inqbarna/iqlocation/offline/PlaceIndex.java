@@ -0,0 +1,25 @@
+package com.inqbarna.iqlocation.offline;
+
+/**
+ * Spatial index over the places known offline. Places are addressed by their ordinal so lookups can be done
+ * without allocating, the {@link Place} object is only needed once a result is going to be used.
+ */
+public interface PlaceIndex {
+
+    int size();
+
+    Place get(int ordinal);
+
+    /**
+     * Fills <code>out</code> with the ordinals of the places closest to the given point, nearest first
+     *
+     * @param maxDistanceMeters places further than this are ignored
+     * @return how many ordinals were written, at most <code>out.length</code>
+     */
+    int nearest(double lat, double lng, double maxDistanceMeters, int[] out);
+
+    /**
+     * @return the ordinal of the place whose locality matches the given name ignoring case, or -1
+     */
+    int findByName(String name);
+}
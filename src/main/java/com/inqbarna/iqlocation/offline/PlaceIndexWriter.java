@@ -0,0 +1,150 @@
+package com.inqbarna.iqlocation.offline;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes the file format read by {@link MappedPlaceIndex}, meant to be run at build time over the places data
+ * file so the app ships the ready to map index:
+ * <pre>
+ *     java -cp ... com.inqbarna.iqlocation.offline.PlaceIndexWriter places.tsv places.idx
+ * </pre>
+ * The input format is the one of {@link InMemoryPlaceIndex#load(InputStream)}.
+ */
+public final class PlaceIndexWriter {
+
+    private static final Comparator<Place> BY_LATITUDE = new Comparator<Place>() {
+        @Override
+        public int compare(Place a, Place b) {
+            return Double.compare(a.getLatitude(), b.getLatitude());
+        }
+    };
+
+    private static final Comparator<Place> BY_LONGITUDE = new Comparator<Place>() {
+        @Override
+        public int compare(Place a, Place b) {
+            return Double.compare(a.getLongitude(), b.getLongitude());
+        }
+    };
+
+    private PlaceIndexWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PlaceIndexWriter <places.tsv> <output.idx>");
+            System.exit(1);
+        }
+
+        InMemoryPlaceIndex source;
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            source = InMemoryPlaceIndex.load(in);
+        } finally {
+            in.close();
+        }
+
+        List<Place> places = new ArrayList<>(source.size());
+        for (int i = 0; i < source.size(); i++) {
+            places.add(source.get(i));
+        }
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+        try {
+            write(places, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void write(List<Place> places, OutputStream out) throws IOException {
+        Place[] nodes = places.toArray(new Place[places.size()]);
+        buildTree(nodes, 0, nodes.length, 0);
+
+        ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+        DataOutputStream strings = new DataOutputStream(stringBytes);
+        int[] stringOffsets = new int[nodes.length];
+        List<long[]> names = new ArrayList<>();
+        for (int i = 0; i < nodes.length; i++) {
+            stringOffsets[i] = strings.size();
+            final Place place = nodes[i];
+            writeField(strings, place.getLocality());
+            writeField(strings, place.getSubAdminArea());
+            writeField(strings, place.getAdminArea());
+            writeField(strings, place.getCountryCode());
+            writeField(strings, place.getCountryName());
+            writeField(strings, place.getPostalCode());
+            if (null != place.getLocality()) {
+                names.add(new long[]{InMemoryPlaceIndex.normalize(place.getLocality()).hashCode(), i});
+            }
+        }
+        strings.flush();
+
+        Collections.sort(names, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] != b[0] ? (a[0] < b[0] ? -1 : 1) : (a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1));
+            }
+        });
+
+        final int namesOffset = MappedPlaceIndex.HEADER_BYTES + nodes.length * MappedPlaceIndex.NODE_BYTES;
+        final int stringsOffset = namesOffset + 4 + names.size() * MappedPlaceIndex.NAME_BYTES;
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MappedPlaceIndex.MAGIC);
+        data.writeInt(MappedPlaceIndex.VERSION);
+        data.writeInt(nodes.length);
+        data.writeInt(namesOffset);
+        data.writeInt(stringsOffset);
+        for (int i = 0; i < nodes.length; i++) {
+            data.writeInt((int) Math.round(nodes[i].getLatitude() * MappedPlaceIndex.FIXED_POINT));
+            data.writeInt((int) Math.round(nodes[i].getLongitude() * MappedPlaceIndex.FIXED_POINT));
+            data.writeFloat(nodes[i].getRadius());
+            data.writeInt(stringOffsets[i]);
+        }
+        data.writeInt(names.size());
+        for (long[] name : names) {
+            data.writeInt((int) name[0]);
+            data.writeInt((int) name[1]);
+        }
+        stringBytes.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Arranges the range so its middle element splits it on latitude (even depth) or longitude (odd depth)
+     */
+    private static void buildTree(Place[] nodes, int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        Arrays.sort(nodes, lo, hi, (depth & 1) == 0 ? BY_LATITUDE : BY_LONGITUDE);
+        final int mid = (lo + hi) >>> 1;
+        buildTree(nodes, lo, mid, depth + 1);
+        buildTree(nodes, mid + 1, hi, depth + 1);
+    }
+
+    private static void writeField(DataOutputStream out, String value) throws IOException {
+        if (null == value) {
+            out.writeShort(MappedPlaceIndex.NULL_FIELD);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        if (bytes.length >= MappedPlaceIndex.NULL_FIELD) {
+            throw new IOException("Field too long: " + value);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
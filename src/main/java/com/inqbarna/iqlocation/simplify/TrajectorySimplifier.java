@@ -0,0 +1,314 @@
+package com.inqbarna.iqlocation.simplify;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import java.util.Arrays;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableOperator;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Observer;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Streaming Douglas-Peucker simplification of a trajectory, keeping only the points needed for no dropped one to
+ * stray more than a tolerance from the simplified path.
+ * <p>
+ * Points are buffered in a bounded window of primitive columns. Once it fills up the window is simplified, kept
+ * points are handed to the {@link Sink} up to the last kept one past its middle, and the rest stay buffered to be
+ * simplified with the following points. Memory does not grow with the length of the trajectory and nothing is
+ * allocated per point, at the cost of keeping a few more points than a pass over the whole trajectory would.
+ * <p>
+ * Distances are measured on an equirectangular projection around the start of each window. Not thread safe.
+ */
+public final class TrajectorySimplifier {
+
+    public static final double DEFAULT_TOLERANCE_METERS = 5;
+    public static final int    DEFAULT_WINDOW_SIZE      = 256;
+
+    private static final int MIN_WINDOW_SIZE = 3;
+
+    /**
+     * Receives kept points, in order
+     */
+    public interface Sink {
+
+        /**
+         * @param sequence ordinal of the point among all the ones added
+         */
+        void onPoint(double latitude, double longitude, long time, long sequence);
+    }
+
+    private final double toleranceSq;
+    private final int    capacity;
+    private final Sink   sink;
+
+    private final double[]  latitudes;
+    private final double[]  longitudes;
+    private final long[]    times;
+    private final long[]    sequences;
+    private final double[]  x;
+    private final double[]  y;
+    private final boolean[] keep;
+    private final int[]     stack;
+
+    private int  size;
+    private long addedCount;
+    private long keptCount;
+
+    public static class Builder {
+        private double toleranceMeters = DEFAULT_TOLERANCE_METERS;
+        private int    windowSize      = DEFAULT_WINDOW_SIZE;
+
+        /**
+         * @param meters furthest a dropped point may be from the simplified path
+         */
+        public Builder setTolerance(double meters) {
+            if (!(meters >= 0)) {
+                throw new IllegalArgumentException("Tolerance must not be negative");
+            }
+            this.toleranceMeters = meters;
+            return this;
+        }
+
+        /**
+         * @param points most points buffered at once, larger windows keep fewer points but delay them more
+         */
+        public Builder setWindowSize(int points) {
+            if (points < MIN_WINDOW_SIZE) {
+                throw new IllegalArgumentException("Window size must be at least " + MIN_WINDOW_SIZE + ", given " + points);
+            }
+            this.windowSize = points;
+            return this;
+        }
+
+        public TrajectorySimplifier build(@NonNull Sink sink) {
+            return new TrajectorySimplifier(this, sink);
+        }
+
+        /**
+         * Simplifies location streams, each subscription with its own simplifier. Buffered locations are flushed when
+         * the stream completes.
+         * <pre>
+         * helper.getLocation().compose(new TrajectorySimplifier.Builder().setTolerance(10).transformer())
+         * </pre>
+         */
+        public ObservableTransformer<Location, Location> transformer() {
+            final double toleranceMeters = this.toleranceMeters;
+            final int windowSize = this.windowSize;
+            return new ObservableTransformer<Location, Location>() {
+                @Override
+                public ObservableSource<Location> apply(Observable<Location> upstream) {
+                    return upstream.lift(
+                            new ObservableOperator<Location, Location>() {
+                                @Override
+                                public Observer<? super Location> apply(Observer<? super Location> observer) {
+                                    return new SimplifyingObserver(
+                                            observer,
+                                            new Builder().setTolerance(toleranceMeters).setWindowSize(windowSize));
+                                }
+                            });
+                }
+            };
+        }
+    }
+
+    private TrajectorySimplifier(Builder builder, Sink sink) {
+        this.toleranceSq = builder.toleranceMeters * builder.toleranceMeters;
+        this.capacity = builder.windowSize;
+        this.sink = sink;
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        times = new long[capacity];
+        sequences = new long[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        keep = new boolean[capacity];
+        // at most one pending range per point
+        stack = new int[2 * capacity];
+    }
+
+    /**
+     * Adds the next point of the trajectory, the first one is passed on right away
+     */
+    public void add(double latitude, double longitude, long time) {
+        final int index = size++;
+        latitudes[index] = latitude;
+        longitudes[index] = longitude;
+        times[index] = time;
+        sequences[index] = addedCount++;
+
+        if (index == 0) {
+            emit(0);
+        } else if (size == capacity) {
+            simplifyWindow();
+        }
+    }
+
+    /**
+     * Passes on the buffered points still kept, ending the trajectory. The next point added starts a new one
+     */
+    public void flush() {
+        if (size > 1) {
+            mark(size);
+            for (int i = 1; i < size; i++) {
+                if (keep[i]) {
+                    emit(i);
+                }
+            }
+        }
+        size = 0;
+    }
+
+    public long getAddedCount() {
+        return addedCount;
+    }
+
+    public long getKeptCount() {
+        return keptCount;
+    }
+
+    private void simplifyWindow() {
+        mark(size);
+
+        // carry over from the last kept point if far enough, so the window end is not forced into the path, yet
+        // every window moves at least half of it along
+        int last = size - 1;
+        for (int i = size - 2; i >= capacity / 2; i--) {
+            if (keep[i]) {
+                last = i;
+                break;
+            }
+        }
+        for (int i = 1; i <= last; i++) {
+            if (keep[i] || i == last) {
+                emit(i);
+            }
+        }
+
+        final int remaining = size - last;
+        System.arraycopy(latitudes, last, latitudes, 0, remaining);
+        System.arraycopy(longitudes, last, longitudes, 0, remaining);
+        System.arraycopy(times, last, times, 0, remaining);
+        System.arraycopy(sequences, last, sequences, 0, remaining);
+        size = remaining;
+    }
+
+    /**
+     * Marks in {@link #keep} the points of the first {@code count} ones that Douglas-Peucker keeps
+     */
+    private void mark(int count) {
+        final double originLat = latitudes[0];
+        final double originLng = longitudes[0];
+        final double metersPerLngDegree = Geodesy.metersPerLongitudeDegree(originLat);
+        for (int i = 0; i < count; i++) {
+            x[i] = Geodesy.wrapLongitude(longitudes[i] - originLng) * metersPerLngDegree;
+            y[i] = (latitudes[i] - originLat) * Geodesy.METERS_PER_DEGREE;
+        }
+
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            final int hi = stack[--top];
+            final int lo = stack[--top];
+
+            int farthest = -1;
+            double farthestSq = toleranceSq;
+            for (int i = lo + 1; i < hi; i++) {
+                final double distanceSq = segmentDistanceSq(i, lo, hi);
+                if (distanceSq > farthestSq) {
+                    farthestSq = distanceSq;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                if (farthest - lo > 1) {
+                    stack[top++] = lo;
+                    stack[top++] = farthest;
+                }
+                if (hi - farthest > 1) {
+                    stack[top++] = farthest;
+                    stack[top++] = hi;
+                }
+            }
+        }
+    }
+
+    private double segmentDistanceSq(int point, int from, int to) {
+        final double dx = x[to] - x[from];
+        final double dy = y[to] - y[from];
+        final double px = x[point] - x[from];
+        final double py = y[point] - y[from];
+        final double lengthSq = dx * dx + dy * dy;
+
+        double t = lengthSq > 0 ? (px * dx + py * dy) / lengthSq : 0;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        final double ex = px - t * dx;
+        final double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    private void emit(int index) {
+        keptCount++;
+        sink.onPoint(latitudes[index], longitudes[index], times[index], sequences[index]);
+    }
+
+    /**
+     * Holds the locations buffered by the simplifier by sequence, the window being their bound
+     */
+    private static final class SimplifyingObserver implements Observer<Location>, Sink {
+        private final Observer<? super Location> downstream;
+        private final TrajectorySimplifier       simplifier;
+        private final Location[]                 pending;
+
+        SimplifyingObserver(Observer<? super Location> downstream, Builder builder) {
+            this.downstream = downstream;
+            this.simplifier = builder.build(this);
+            this.pending = new Location[builder.windowSize];
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            downstream.onSubscribe(d);
+        }
+
+        @Override
+        public void onNext(Location location) {
+            pending[(int) (simplifier.getAddedCount() % pending.length)] = location;
+            simplifier.add(location.getLatitude(), location.getLongitude(), location.getTime());
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            downstream.onError(e);
+        }
+
+        @Override
+        public void onComplete() {
+            simplifier.flush();
+            downstream.onComplete();
+        }
+
+        @Override
+        public void onPoint(double latitude, double longitude, long time, long sequence) {
+            final int slot = (int) (sequence % pending.length);
+            final Location location = pending[slot];
+            pending[slot] = null;
+            downstream.onNext(location);
+        }
+    }
+}
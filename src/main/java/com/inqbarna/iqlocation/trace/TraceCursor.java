@@ -0,0 +1,175 @@
+package com.inqbarna.iqlocation.trace;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks the fixes of a trace in order, decoding them straight from the file mapping into primitive columns that
+ * are reused from block to block, so reading allocates nothing but the {@link Location}s asked for.
+ * Not thread safe.
+ */
+public final class TraceCursor {
+
+    /**
+     * Provider set on locations created by {@link #toLocation()}
+     */
+    public static final String PROVIDER = "trace";
+
+    private final ByteBuffer buffer;
+    private final int        limit;
+    private       int        blockPosition;
+    private       int        position;
+
+    private long[]   times      = new long[0];
+    private double[] lats       = new double[0];
+    private double[] lngs       = new double[0];
+    private float[]  accuracies = new float[0];
+    private float[]  speeds     = new float[0];
+    private float[]  bearings   = new float[0];
+    private byte[]   flags      = new byte[0];
+    private int      count;
+    private int      index      = -1;
+
+    TraceCursor(ByteBuffer buffer, int limit) {
+        this.buffer = buffer;
+        this.limit = limit;
+        this.blockPosition = TraceFormat.HEADER_BYTES;
+    }
+
+    /**
+     * Moves to the next fix
+     *
+     * @return false once there are no more
+     */
+    public boolean next() {
+        if (index + 1 < count) {
+            index++;
+            return true;
+        }
+        final int blockEnd = TraceFormat.blockEnd(buffer, blockPosition, limit);
+        if (blockEnd < 0) {
+            count = 0;
+            return false;
+        }
+        readBlock(blockEnd);
+        index = 0;
+        return true;
+    }
+
+    public long getTime() {
+        return times[index];
+    }
+
+    public double getLatitude() {
+        return lats[index];
+    }
+
+    public double getLongitude() {
+        return lngs[index];
+    }
+
+    public boolean hasAccuracy() {
+        return (flags[index] & TraceFormat.HAS_ACCURACY) != 0;
+    }
+
+    public float getAccuracy() {
+        return accuracies[index];
+    }
+
+    public boolean hasSpeed() {
+        return (flags[index] & TraceFormat.HAS_SPEED) != 0;
+    }
+
+    public float getSpeed() {
+        return speeds[index];
+    }
+
+    public boolean hasBearing() {
+        return (flags[index] & TraceFormat.HAS_BEARING) != 0;
+    }
+
+    public float getBearing() {
+        return bearings[index];
+    }
+
+    /**
+     * @return a new location with the current fix
+     */
+    @NonNull
+    public Location toLocation() {
+        Location location = new Location(PROVIDER);
+        location.setTime(getTime());
+        location.setLatitude(getLatitude());
+        location.setLongitude(getLongitude());
+        if (hasAccuracy()) {
+            location.setAccuracy(getAccuracy());
+        }
+        if (hasSpeed()) {
+            location.setSpeed(getSpeed());
+        }
+        if (hasBearing()) {
+            location.setBearing(getBearing());
+        }
+        return location;
+    }
+
+    private void readBlock(int blockEnd) {
+        count = buffer.getInt(blockPosition + 4);
+        position = blockPosition + TraceFormat.BLOCK_HEADER_BYTES;
+        blockPosition = blockEnd;
+
+        if (times.length < count) {
+            times = new long[count];
+            lats = new double[count];
+            lngs = new double[count];
+            accuracies = new float[count];
+            speeds = new float[count];
+            bearings = new float[count];
+            flags = new byte[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            flags[i] = buffer.get(position++);
+        }
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarLong();
+            times[i] = previous;
+        }
+        readDegrees(lats);
+        readDegrees(lngs);
+        readScaled(accuracies, TraceFormat.METERS_SCALE);
+        readScaled(speeds, TraceFormat.METERS_SCALE);
+        readScaled(bearings, TraceFormat.BEARING_SCALE);
+    }
+
+    private void readDegrees(double[] values) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarLong();
+            values[i] = previous / TraceFormat.DEGREES_SCALE;
+        }
+    }
+
+    private void readScaled(float[] values, float scale) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarLong();
+            values[i] = previous / scale;
+        }
+    }
+
+    private long readVarLong() {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            zigzag |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 64);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
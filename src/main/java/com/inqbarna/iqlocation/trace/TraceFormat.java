@@ -0,0 +1,99 @@
+package com.inqbarna.iqlocation.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout shared by {@link TraceWriter} and {@link TraceReader}.
+ * <p>
+ * A file header (magic, version) is followed by blocks. A block header holds its magic, the number of fixes, the
+ * payload length and a checksum of the payload, and the payload stores the fixes column by column: a presence
+ * flags byte per fix, then time, latitude, longitude, accuracy, speed and bearing. Values are fixed point and
+ * each column is encoded as zig-zag varint deltas from the previous fix of the block, the first one being
+ * absolute, so blocks are independent of each other. Missing values repeat the previous one.
+ * <p>
+ * Blocks are only appended after their payload is complete, a torn or garbage block at the end is detected by its
+ * magic, length or checksum and everything from it on is ignored.
+ */
+final class TraceFormat {
+
+    static final int MAGIC       = 0x49515452; // IQTR
+    static final int VERSION     = 1;
+    static final int BLOCK_MAGIC = 0x49515442; // IQTB
+
+    static final int HEADER_BYTES       = 8;
+    static final int BLOCK_HEADER_BYTES = 16;
+
+    static final int HAS_ACCURACY = 1;
+    static final int HAS_SPEED    = 2;
+    static final int HAS_BEARING  = 4;
+
+    static final double DEGREES_SCALE = 1e7;
+    static final float  METERS_SCALE  = 100; // centimeters
+    static final float  BEARING_SCALE = 100; // centidegrees
+
+    /**
+     * Worst case bytes of a fix: flags plus a 10 bytes varint for time and 5 bytes ones for the rest
+     */
+    static final int MAX_FIX_BYTES = 1 + 10 + 5 * 5;
+
+    private static final int FNV_OFFSET = 0x811c9dc5;
+    private static final int FNV_PRIME  = 0x01000193;
+
+    private TraceFormat() {
+    }
+
+    static int checksum(byte[] bytes, int offset, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static int checksum(ByteBuffer buffer, int offset, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the position right after the last valid block, starting at the given one
+     */
+    static int validEnd(ByteBuffer buffer, int position, int limit) {
+        int next;
+        while ((next = blockEnd(buffer, position, limit)) > 0) {
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * @return the position right after the block starting at the given one, or -1 if there is no valid block there
+     */
+    static int blockEnd(ByteBuffer buffer, int position, int limit) {
+        if (position + BLOCK_HEADER_BYTES > limit || buffer.getInt(position) != BLOCK_MAGIC) {
+            return -1;
+        }
+        final int count = buffer.getInt(position + 4);
+        final int length = buffer.getInt(position + 8);
+        if (count <= 0 || length < count || length > limit - position - BLOCK_HEADER_BYTES) {
+            return -1;
+        }
+        if (buffer.getInt(position + 12) != checksum(buffer, position + BLOCK_HEADER_BYTES, length)) {
+            return -1;
+        }
+        return position + BLOCK_HEADER_BYTES + length;
+    }
+
+    static int writeVarLong(byte[] out, int position, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7fL) != 0) {
+            out[position++] = (byte) ((zigzag & 0x7f) | 0x80);
+            zigzag >>>= 7;
+        }
+        out[position++] = (byte) zigzag;
+        return position;
+    }
+}
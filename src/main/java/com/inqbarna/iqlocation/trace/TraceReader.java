@@ -0,0 +1,81 @@
+package com.inqbarna.iqlocation.trace;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.functions.BiConsumer;
+
+/**
+ * Reads a trace written by {@link TraceWriter}, memory mapped so blocks are decoded without copying the file in.
+ * Only complete blocks are read, a trace still being written or left torn by a crash can be read up to them.
+ */
+public class TraceReader {
+
+    private final ByteBuffer buffer;
+    private final int        limit;
+
+    private TraceReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        if (limit < TraceFormat.HEADER_BYTES || buffer.getInt(0) != TraceFormat.MAGIC || buffer.getInt(4) != TraceFormat.VERSION) {
+            throw new IOException("Not a trace file, or unsupported version");
+        }
+    }
+
+    public static TraceReader open(@NonNull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new TraceReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * @param buffer trace contents, for instance read from an asset that cannot be mapped
+     */
+    public static TraceReader wrap(@NonNull ByteBuffer buffer) throws IOException {
+        return new TraceReader(buffer.duplicate());
+    }
+
+    /**
+     * @return a new cursor at the start of the trace, for allocation free reading of the fixes
+     */
+    public TraceCursor cursor() {
+        return new TraceCursor(buffer.duplicate(), limit);
+    }
+
+    /**
+     * @return the recorded fixes, as they are requested. Each subscription reads the trace from the start.
+     */
+    public Flowable<Location> read() {
+        return Flowable.generate(
+                new Callable<TraceCursor>() {
+                    @Override
+                    public TraceCursor call() {
+                        return cursor();
+                    }
+                },
+                new BiConsumer<TraceCursor, Emitter<Location>>() {
+                    @Override
+                    public void accept(TraceCursor cursor, Emitter<Location> emitter) {
+                        if (cursor.next()) {
+                            emitter.onNext(cursor.toLocation());
+                        } else {
+                            emitter.onComplete();
+                        }
+                    }
+                });
+    }
+}
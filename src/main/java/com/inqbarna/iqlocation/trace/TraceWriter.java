@@ -0,0 +1,285 @@
+package com.inqbarna.iqlocation.trace;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Appends fixes to a compact trace file, see {@link TraceFormat} for the layout. A fix takes about 10 bytes
+ * while moving steadily.
+ * <p>
+ * Fixes are gathered in memory, in primitive columns, and written as a block once enough of them are pending or
+ * when {@link #commit()} is called, so the cost of encoding and syncing is paid once per group. The file is memory
+ * mapped and grown in chunks. Opening an existing file resumes after its last complete block, dropping whatever
+ * a crash left half written.
+ */
+public class TraceWriter implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private static final int GROWTH_BYTES = 64 * 1024;
+
+    private final int     blockSize;
+    private final boolean syncOnCommit;
+
+    private final RandomAccessFile file;
+    private final FileChannel      channel;
+    private       MappedByteBuffer buffer;
+    private       int              end;
+
+    private final long[]   times;
+    private final double[] lats;
+    private final double[] lngs;
+    private final float[]  accuracies;
+    private final float[]  speeds;
+    private final float[]  bearings;
+    private final byte[]   flags;
+    private final byte[]   scratch;
+    private       int      pending;
+
+    private long fixCount;
+
+    public static class Builder {
+        private final File    file;
+        private       int     blockSize    = DEFAULT_BLOCK_SIZE;
+        private       boolean syncOnCommit = true;
+
+        public Builder(@NonNull File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param fixes pending fixes that trigger writing a block
+         */
+        public Builder setBlockSize(int fixes) {
+            if (fixes <= 0) {
+                throw new IllegalArgumentException("Block size must be positive");
+            }
+            this.blockSize = fixes;
+            return this;
+        }
+
+        /**
+         * @param sync whether a commit waits for the data to reach the storage, true by default
+         */
+        public Builder setSyncOnCommit(boolean sync) {
+            this.syncOnCommit = sync;
+            return this;
+        }
+
+        public TraceWriter build() throws IOException {
+            return new TraceWriter(this);
+        }
+    }
+
+    public static TraceWriter open(@NonNull File file) throws IOException {
+        return new Builder(file).build();
+    }
+
+    private TraceWriter(Builder builder) throws IOException {
+        blockSize = builder.blockSize;
+        syncOnCommit = builder.syncOnCommit;
+        times = new long[blockSize];
+        lats = new double[blockSize];
+        lngs = new double[blockSize];
+        accuracies = new float[blockSize];
+        speeds = new float[blockSize];
+        bearings = new float[blockSize];
+        flags = new byte[blockSize];
+        scratch = new byte[blockSize * TraceFormat.MAX_FIX_BYTES];
+
+        final File parent = builder.file.getParentFile();
+        if (null != parent && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create trace directory " + parent);
+        }
+        file = new RandomAccessFile(builder.file, "rw");
+        channel = file.getChannel();
+        try {
+            final long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Trace file too big");
+            }
+            if (length < TraceFormat.HEADER_BYTES) {
+                map(GROWTH_BYTES);
+                buffer.putInt(0, TraceFormat.MAGIC);
+                buffer.putInt(4, TraceFormat.VERSION);
+                end = TraceFormat.HEADER_BYTES;
+            } else {
+                map((int) length);
+                if (buffer.getInt(0) != TraceFormat.MAGIC || buffer.getInt(4) != TraceFormat.VERSION) {
+                    throw new IOException("Not a trace file, or unsupported version");
+                }
+                end = TraceFormat.validEnd(buffer, TraceFormat.HEADER_BYTES, (int) length);
+                if (end < length) {
+                    // drop the torn tail, so no stale block is ever found after the ones we append
+                    buffer = null;
+                    channel.truncate(end);
+                    map(end + GROWTH_BYTES);
+                }
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a stream passing through the given locations, recording each of them
+     */
+    public Observable<Location> record(@NonNull Observable<Location> locations) {
+        return locations.doOnNext(
+                new Consumer<Location>() {
+                    @Override
+                    public void accept(Location location) throws IOException {
+                        append(location);
+                    }
+                });
+    }
+
+    public synchronized void append(@NonNull Location location) throws IOException {
+        if (null == buffer) {
+            throw new IOException("Trace writer closed");
+        }
+        final int i = pending;
+        times[i] = location.getTime();
+        lats[i] = location.getLatitude();
+        lngs[i] = location.getLongitude();
+        int flag = 0;
+        if (location.hasAccuracy()) {
+            flag |= TraceFormat.HAS_ACCURACY;
+            accuracies[i] = location.getAccuracy();
+        }
+        if (location.hasSpeed()) {
+            flag |= TraceFormat.HAS_SPEED;
+            speeds[i] = location.getSpeed();
+        }
+        if (location.hasBearing()) {
+            flag |= TraceFormat.HAS_BEARING;
+            bearings[i] = location.getBearing();
+        }
+        flags[i] = (byte) flag;
+        pending++;
+        fixCount++;
+
+        if (pending == blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes pending fixes, and waits for them to reach the storage unless disabled on the builder
+     */
+    public synchronized void commit() throws IOException {
+        if (null == buffer) {
+            throw new IOException("Trace writer closed");
+        }
+        writeBlock();
+        if (syncOnCommit) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * @return fixes appended by this writer, pending ones included
+     */
+    public synchronized long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * @return bytes used in the file by committed fixes
+     */
+    public synchronized long getCommittedBytes() {
+        return end;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (null == buffer) {
+            return;
+        }
+        try {
+            commit();
+            buffer = null;
+            channel.truncate(end);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        final int count = pending;
+        int position = 0;
+        System.arraycopy(flags, 0, scratch, 0, count);
+        position += count;
+
+        long previousTime = 0;
+        for (int i = 0; i < count; i++) {
+            position = TraceFormat.writeVarLong(scratch, position, times[i] - previousTime);
+            previousTime = times[i];
+        }
+        position = writeDegrees(lats, count, position);
+        position = writeDegrees(lngs, count, position);
+        position = writeScaled(accuracies, TraceFormat.HAS_ACCURACY, TraceFormat.METERS_SCALE, count, position);
+        position = writeScaled(speeds, TraceFormat.HAS_SPEED, TraceFormat.METERS_SCALE, count, position);
+        position = writeScaled(bearings, TraceFormat.HAS_BEARING, TraceFormat.BEARING_SCALE, count, position);
+
+        final int blockBytes = TraceFormat.BLOCK_HEADER_BYTES + position;
+        ensureCapacity(end + blockBytes);
+        // payload first, the header validating it goes last
+        buffer.position(end + TraceFormat.BLOCK_HEADER_BYTES);
+        buffer.put(scratch, 0, position);
+        buffer.putInt(end + 4, count);
+        buffer.putInt(end + 8, position);
+        buffer.putInt(end + 12, TraceFormat.checksum(scratch, 0, position));
+        buffer.putInt(end, TraceFormat.BLOCK_MAGIC);
+        end += blockBytes;
+        pending = 0;
+    }
+
+    private int writeDegrees(double[] values, int count, int position) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            final long fixed = Math.round(values[i] * TraceFormat.DEGREES_SCALE);
+            position = TraceFormat.writeVarLong(scratch, position, fixed - previous);
+            previous = fixed;
+        }
+        return position;
+    }
+
+    private int writeScaled(float[] values, int flag, float scale, int count, int position) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            final long fixed = (flags[i] & flag) != 0 ? Math.round(values[i] * scale) : previous;
+            position = TraceFormat.writeVarLong(scratch, position, fixed - previous);
+            previous = fixed;
+        }
+        return position;
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        if (required > buffer.capacity()) {
+            map(Math.max(required, buffer.capacity() + GROWTH_BYTES));
+        }
+    }
+
+    private void map(int size) throws IOException {
+        final int rounded = (size + GROWTH_BYTES - 1) / GROWTH_BYTES * GROWTH_BYTES;
+        if (channel.size() < rounded) {
+            file.setLength(rounded);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, rounded);
+    }
+}
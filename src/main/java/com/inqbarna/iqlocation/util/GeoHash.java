@@ -0,0 +1,97 @@
+package com.inqbarna.iqlocation.util;
+
+/**
+ * Geohash cell computation on primitives, the cell is returned as the interleaved bits instead of the
+ * base32 string so it can be used as a cheap map key.
+ */
+public final class GeoHash {
+
+    public static final int BITS_PER_CHAR = 5;
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private GeoHash() {
+    }
+
+    /**
+     * @param precision number of geohash characters, between 1 and {@link #MAX_PRECISION}
+     * @return the cell bits, longitude first as in the standard geohash
+     */
+    public static long encode(double lat, double lng, int precision) {
+        checkPrecision(precision);
+        final int totalBits = precision * BITS_PER_CHAR;
+
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        long bits = 0;
+        for (int i = 0; i < totalBits; i++) {
+            bits <<= 1;
+            if ((i & 1) == 0) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    bits |= 1;
+                    minLng = mid;
+                } else {
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    bits |= 1;
+                    minLat = mid;
+                } else {
+                    maxLat = mid;
+                }
+            }
+        }
+        return bits;
+    }
+
+    public static String toBase32(long bits, int precision) {
+        checkPrecision(precision);
+        char[] chars = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (bits & 0x1f)];
+            bits >>>= BITS_PER_CHAR;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return meters of latitude spanned by the cells of the given precision
+     */
+    public static double cellHeightMeters(int precision) {
+        checkPrecision(precision);
+        final int latBits = precision * BITS_PER_CHAR / 2;
+        return 180d / (1L << latBits) * Geodesy.METERS_PER_DEGREE;
+    }
+
+    /**
+     * @return meters of longitude spanned by the cells of the given precision at the given latitude
+     */
+    public static double cellWidthMeters(int precision, double lat) {
+        checkPrecision(precision);
+        final int lngBits = (precision * BITS_PER_CHAR + 1) / 2;
+        return 360d / (1L << lngBits) * Geodesy.metersPerLongitudeDegree(lat);
+    }
+
+    /**
+     * @return the shortest precision whose cells are at most the given size on both sides anywhere, that is on the
+     * equator, or {@link #MAX_PRECISION} if none is that small
+     */
+    public static int precisionFor(double meters) {
+        for (int precision = 1; precision < MAX_PRECISION; precision++) {
+            if (cellHeightMeters(precision) <= meters && cellWidthMeters(precision, 0) <= meters) {
+                return precision;
+            }
+        }
+        return MAX_PRECISION;
+    }
+
+    private static void checkPrecision(int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Geohash precision must be between 1 and " + MAX_PRECISION + ", given " + precision);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.inqbarna.iqlocation.util;
+
+/**
+ * Distances, bearings and boxes on primitives, none of them allocating, for paths that handle every fix.
+ * <p>
+ * From cheapest to most accurate: {@link #equirectangular} is good within a few kilometers away from the poles,
+ * {@link #haversine} anywhere on the sphere, within about 0.6% of the ellipsoid, and {@link #vincenty} on the WGS84
+ * ellipsoid, like {@code Location.distanceBetween} but with no result array. Coordinates are in degrees and
+ * distances in meters.
+ */
+public final class Geodesy {
+
+    /**
+     * Mean earth radius, the one spherical formulas use
+     */
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    /**
+     * Meters along a meridian per degree of latitude on the sphere, or along the equator per degree of longitude
+     */
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    public static final int BOX_MIN_LAT = 0;
+    public static final int BOX_MIN_LNG = 1;
+    public static final int BOX_MAX_LAT = 2;
+    public static final int BOX_MAX_LNG = 3;
+
+    private static final double WGS84_A = 6378137;
+    private static final double WGS84_F = 1 / 298.257223563;
+    private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+
+    private static final int    VINCENTY_ITERATIONS = 20;
+    private static final double VINCENTY_EPSILON    = 1e-12;
+
+    private Geodesy() {
+    }
+
+    /**
+     * @return the given longitude difference brought to [-180, 180], so distances are not measured the long way round
+     */
+    public static double wrapLongitude(double degrees) {
+        if (degrees > 180) {
+            return degrees - 360;
+        } else if (degrees < -180) {
+            return degrees + 360;
+        }
+        return degrees;
+    }
+
+    /**
+     * Equirectangular projection around the mean latitude, the fast path for short distances
+     */
+    public static double equirectangular(double lat1, double lng1, double lat2, double lng2) {
+        final double x = wrapLongitude(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        final double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Great circle distance on the sphere
+     */
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        final double phi1 = Math.toRadians(lat1);
+        final double phi2 = Math.toRadians(lat2);
+        final double sinDLat = Math.sin((phi2 - phi1) / 2);
+        final double sinDLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        final double h = sinDLat * sinDLat + Math.cos(phi1) * Math.cos(phi2) * sinDLng * sinDLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    /**
+     * Geodesic distance on the WGS84 ellipsoid. The iteration may not converge for nearly antipodal points, the
+     * {@link #haversine} distance is returned for them.
+     */
+    public static double vincenty(double lat1, double lng1, double lat2, double lng2) {
+        final double l = Math.toRadians(wrapLongitude(lng2 - lng1));
+        final double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat1)));
+        final double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(lat2)));
+        final double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        final double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM;
+        int iterations = 0;
+        while (true) {
+            final double sinLambda = Math.sin(lambda);
+            final double cosLambda = Math.cos(lambda);
+            final double a = cosU2 * sinLambda;
+            final double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(a * a + b * b);
+            if (sinSigma == 0) {
+                return 0; // coincident points
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            final double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            // on the equator cosSqAlpha is zero and the term vanishes
+            cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0;
+            final double c = WGS84_F / 16 * cosSqAlpha * (4 + WGS84_F * (4 - 3 * cosSqAlpha));
+            final double previous = lambda;
+            lambda = l + (1 - c) * WGS84_F * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previous) < VINCENTY_EPSILON) {
+                break;
+            }
+            if (++iterations >= VINCENTY_ITERATIONS) {
+                return haversine(lat1, lng1, lat2, lng2);
+            }
+        }
+
+        final double uSq = cosSqAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+        final double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        final double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        final double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                - b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return WGS84_B * a * (sigma - deltaSigma);
+    }
+
+    /**
+     * @return initial great circle bearing from the first point to the second, in degrees clockwise from north in
+     * [0, 360)
+     */
+    public static double bearing(double lat1, double lng1, double lat2, double lng2) {
+        final double phi1 = Math.toRadians(lat1);
+        final double phi2 = Math.toRadians(lat2);
+        final double dLng = Math.toRadians(lng2 - lng1);
+        final double y = Math.sin(dLng) * Math.cos(phi2);
+        final double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLng);
+        final double degrees = Math.toDegrees(Math.atan2(y, x));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    /**
+     * Point reached following a great circle from the given one
+     *
+     * @param out receives the latitude at 0 and the longitude, in [-180, 180), at 1
+     */
+    public static void destination(double lat, double lng, double bearingDegrees, double distanceMeters, double[] out) {
+        final double delta = distanceMeters / EARTH_RADIUS_METERS;
+        final double theta = Math.toRadians(bearingDegrees);
+        final double phi1 = Math.toRadians(lat);
+        final double sinPhi1 = Math.sin(phi1), cosPhi1 = Math.cos(phi1);
+        final double sinDelta = Math.sin(delta), cosDelta = Math.cos(delta);
+
+        final double sinPhi2 = sinPhi1 * cosDelta + cosPhi1 * sinDelta * Math.cos(theta);
+        final double phi2 = Math.asin(sinPhi2);
+        final double lambda = Math.atan2(Math.sin(theta) * sinDelta * cosPhi1, cosDelta - sinPhi1 * sinPhi2);
+
+        out[0] = Math.toDegrees(phi2);
+        out[1] = normalizeLongitude(lng + Math.toDegrees(lambda));
+    }
+
+    /**
+     * @return degrees of latitude spanned by the given distance
+     */
+    public static double latitudeDelta(double radiusMeters) {
+        return radiusMeters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * @return most degrees of longitude a circle of the given radius spans on either side of its center, 180 if it
+     * covers a pole
+     */
+    public static double longitudeDelta(double lat, double radiusMeters) {
+        final double angular = radiusMeters / EARTH_RADIUS_METERS;
+        final double phi = Math.toRadians(lat);
+        final double sin = Math.sin(angular) / Math.cos(phi);
+        if (Math.abs(phi) + angular >= Math.PI / 2 || sin >= 1) {
+            return 180;
+        }
+        return Math.toDegrees(Math.asin(sin));
+    }
+
+    /**
+     * Box containing every point within the radius of the given one. Latitudes are clamped to the poles, longitudes
+     * are not wrapped, so a box across the antimeridian goes below -180 or above 180.
+     *
+     * @param out receives the bounds at {@link #BOX_MIN_LAT}, {@link #BOX_MIN_LNG}, {@link #BOX_MAX_LAT} and
+     *            {@link #BOX_MAX_LNG}
+     */
+    public static void boundingBox(double lat, double lng, double radiusMeters, double[] out) {
+        final double dLat = latitudeDelta(radiusMeters);
+        final double dLng = longitudeDelta(lat, radiusMeters);
+        out[BOX_MIN_LAT] = Math.max(-90, lat - dLat);
+        out[BOX_MAX_LAT] = Math.min(90, lat + dLat);
+        out[BOX_MIN_LNG] = dLng >= 180 ? -180 : lng - dLng;
+        out[BOX_MAX_LNG] = dLng >= 180 ? 180 : lng + dLng;
+    }
+
+    /**
+     * @return meters per degree of longitude at the given latitude
+     */
+    public static double metersPerLongitudeDegree(double lat) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+    }
+
+    private static double normalizeLongitude(double degrees) {
+        final double wrapped = (degrees + 180) % 360;
+        return (wrapped < 0 ? wrapped + 360 : wrapped) - 180;
+    }
+}
@@ -0,0 +1,30 @@
+package com.inqbarna.iqlocation.util;
+
+/**
+ * Spaces out permits evenly, each caller gets how long it has to wait for its turn instead of being blocked
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private       long nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond max permits handed per second, zero or less to never make callers wait
+     */
+    public RateLimiter(double permitsPerSecond) {
+        intervalNanos = permitsPerSecond > 0 ? (long) (1e9 / permitsPerSecond) : 0;
+    }
+
+    /**
+     * @return nanoseconds the caller must wait before using the reserved permit
+     */
+    public synchronized long reserve() {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        final long grantedAt = nextFreeNanos - now > 0 ? nextFreeNanos : now;
+        nextFreeNanos = grantedAt + intervalNanos;
+        return grantedAt - now;
+    }
+}
@@ -0,0 +1,76 @@
+package com.inqbarna.iqlocation.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Maybe;
+import io.reactivex.MaybeSource;
+import io.reactivex.Observable;
+import io.reactivex.functions.Action;
+
+/**
+ * Collapses concurrent lookups for the same key into one. A lookup subscribed while another one with its key is in
+ * progress attaches to it and gets its very same result (or error) instead of starting its own, and the shared
+ * source is cancelled once every subscriber disposes.
+ */
+public final class SingleFlight<K, T> {
+
+    private final ConcurrentHashMap<K, Observable<T>> flights     = new ConcurrentHashMap<>();
+    private final AtomicLong                          sharedCount = new AtomicLong();
+
+    /**
+     * @param source looked up only if no flight is in progress for the key, at subscription time
+     */
+    public Maybe<T> join(@NonNull final K key, @NonNull final Maybe<T> source) {
+        return Maybe.defer(
+                new Callable<MaybeSource<T>>() {
+                    @Override
+                    public MaybeSource<T> call() {
+                        Observable<T> flight = flights.get(key);
+                        if (null != flight) {
+                            sharedCount.incrementAndGet();
+                            return flight.singleElement();
+                        }
+
+                        final AtomicReference<Observable<T>> self = new AtomicReference<>();
+                        Observable<T> created = source.toObservable()
+                                                      .doFinally(
+                                                              new Action() {
+                                                                  @Override
+                                                                  public void run() {
+                                                                      // a flight ending late must not remove a newer one
+                                                                      flights.remove(key, self.get());
+                                                                  }
+                                                              })
+                                                      .replay(1)
+                                                      .refCount();
+                        self.set(created);
+                        flight = flights.putIfAbsent(key, created);
+                        if (null != flight) {
+                            sharedCount.incrementAndGet();
+                        } else {
+                            flight = created;
+                        }
+                        return flight.singleElement();
+                    }
+                });
+    }
+
+    /**
+     * @return how many lookups got their result from a flight started by someone else
+     */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * @return keys with a flight in progress
+     */
+    public int size() {
+        return flights.size();
+    }
+}
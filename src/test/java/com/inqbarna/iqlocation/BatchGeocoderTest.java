@@ -0,0 +1,87 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.location.Location;
+
+import com.inqbarna.iqlocation.cache.DiskGeocodeCache;
+import com.inqbarna.iqlocation.cache.ReverseGeocodeCache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BatchGeocoderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final GeocodingProvider provider = new GeocodingProvider() {
+        @Override
+        public Single<List<Address>> getAddresses(double lat, double lng, int maxResults, String languageCode) {
+            return Single.fromCallable(
+                    new Callable<List<Address>>() {
+                        @Override
+                        public List<Address> call() {
+                            requests.incrementAndGet();
+                            return Collections.singletonList(new Address(Locale.ENGLISH));
+                        }
+                    });
+        }
+
+        @Override
+        public Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode) {
+            return Maybe.empty();
+        }
+    };
+
+    @Test
+    public void missesReadEachTierOnce() throws Exception {
+        final DiskGeocodeCache disk = new DiskGeocodeCache.Builder(folder.getRoot()).build();
+        final Geocoder geocoder = Geocoder.builder()
+                                          .setProvider(provider)
+                                          .setReverseCache(new ReverseGeocodeCache.Builder().build())
+                                          .setDiskCache(disk)
+                                          .build();
+        final BatchGeocoder batch = new BatchGeocoder.Builder(geocoder).setMaxRequestsPerSecond(0).build();
+
+        final List<Location> trace = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            trace.add(location(41.38 + i * 0.01, 2.17));
+        }
+        assertEquals(3, batch.geocode(trace).toList().blockingGet().size());
+        assertEquals(3, requests.get());
+        assertEquals(3, disk.getMissCount());
+
+        // a second pass is answered by the memory cache
+        assertEquals(3, batch.geocode(trace).toList().blockingGet().size());
+        assertEquals(3, requests.get());
+        assertEquals(3, disk.getMissCount());
+        assertEquals(0, disk.getHitCount());
+    }
+
+    private static Location location(double lat, double lng) {
+        final Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        return location;
+    }
+}
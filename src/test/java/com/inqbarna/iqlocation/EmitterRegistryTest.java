@@ -0,0 +1,239 @@
+package com.inqbarna.iqlocation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmitterRegistryTest {
+
+    private static final int THREADS             = 8;
+    private static final int EMITTERS_PER_THREAD = 200;
+    private static final int LAST                = -1;
+
+    private final EmitterRegistry<Integer> registry = new EmitterRegistry<>();
+
+    @Test
+    public void deliversToEveryLiveEmitter() {
+        final TestObserver<Integer> first = new TestObserver<>();
+        final TestObserver<Integer> second = new TestObserver<>();
+        registry.add(emitterOf(first));
+        registry.add(emitterOf(second));
+
+        assertEquals(2, registry.onNext(1));
+        assertEquals(2, registry.onNext(2));
+        first.assertValues(1, 2);
+        second.assertValues(1, 2);
+    }
+
+    @Test
+    public void disposedEmittersAreSkippedAndPruned() {
+        final TestObserver<Integer> kept = new TestObserver<>();
+        final TestObserver<Integer> disposed = new TestObserver<>();
+        final ObservableEmitter<Integer> keptEmitter = emitterOf(kept);
+        registry.add(keptEmitter);
+        registry.add(emitterOf(disposed));
+
+        disposed.dispose();
+        assertEquals(1, registry.onNext(1));
+        kept.assertValue(1);
+        disposed.assertNoValues();
+
+        // the disposed one is gone, so removing the other empties the registry
+        registry.remove(keptEmitter);
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void pruneReportsWhetherAnyoneIsLeft() {
+        final TestObserver<Integer> observer = new TestObserver<>();
+        registry.add(emitterOf(observer));
+
+        assertTrue(registry.pruneDisposed());
+        observer.dispose();
+        assertFalse(registry.pruneDisposed());
+        assertTrue(registry.isEmpty());
+        observer.assertNoValues();
+    }
+
+    @Test
+    public void removingUnknownEmitterChangesNothing() {
+        final TestObserver<Integer> observer = new TestObserver<>();
+        registry.add(emitterOf(observer));
+
+        registry.remove(emitterOf(new TestObserver<Integer>()));
+        assertEquals(1, registry.onNext(1));
+    }
+
+    @Test
+    public void terminalEventsEmptyTheRegistry() {
+        final TestObserver<Integer> completed = new TestObserver<>();
+        registry.add(emitterOf(completed));
+        registry.onComplete();
+        completed.assertComplete();
+        assertTrue(registry.isEmpty());
+
+        final TestObserver<Integer> failed = new TestObserver<>();
+        final IOException error = new IOException();
+        registry.add(emitterOf(failed));
+        registry.onError(error);
+        failed.assertError(error);
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void concurrentAddAndRemoveLoseNoRegistration() throws Exception {
+        final List<List<TestObserver<Integer>>> kept = new ArrayList<>();
+        final List<List<TestObserver<Integer>>> removed = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            kept.add(new ArrayList<TestObserver<Integer>>());
+            removed.add(new ArrayList<TestObserver<Integer>>());
+        }
+
+        runWhileDispatching(
+                new Worker() {
+                    @Override
+                    public void run(int thread) {
+                        final List<ObservableEmitter<Integer>> mine = new ArrayList<>();
+                        for (int i = 0; i < EMITTERS_PER_THREAD; i++) {
+                            final TestObserver<Integer> observer = new TestObserver<>();
+                            final ObservableEmitter<Integer> emitter = emitterOf(observer);
+                            registry.add(emitter);
+                            mine.add(emitter);
+                            (i % 2 == 0 ? kept : removed).get(thread).add(observer);
+                        }
+                        for (int i = 1; i < EMITTERS_PER_THREAD; i += 2) {
+                            registry.remove(mine.get(i));
+                        }
+                    }
+                });
+
+        assertEquals(THREADS * EMITTERS_PER_THREAD / 2, registry.onNext(LAST));
+        for (int i = 0; i < THREADS; i++) {
+            for (TestObserver<Integer> observer : kept.get(i)) {
+                assertLast(observer, true);
+            }
+            for (TestObserver<Integer> observer : removed.get(i)) {
+                assertLast(observer, false);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentDisposalWhileDispatchingLosesNoRegistration() throws Exception {
+        final List<TestObserver<Integer>> live = new ArrayList<>();
+        for (int i = 0; i < THREADS * EMITTERS_PER_THREAD; i++) {
+            live.add(new TestObserver<Integer>());
+        }
+
+        // dispatch compacts the array while registrations keep swapping it
+        runWhileDispatching(
+                new Worker() {
+                    @Override
+                    public void run(int thread) {
+                        for (int i = 0; i < EMITTERS_PER_THREAD; i++) {
+                            final TestObserver<Integer> disposed = new TestObserver<>();
+                            registry.add(emitterOf(disposed));
+                            disposed.dispose();
+                            registry.add(emitterOf(live.get(thread * EMITTERS_PER_THREAD + i)));
+                        }
+                    }
+                });
+
+        assertEquals(live.size(), registry.onNext(LAST));
+        for (TestObserver<Integer> observer : live) {
+            assertLast(observer, true);
+        }
+        assertEquals(live.size(), registry.onNext(LAST));
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+
+    /**
+     * Runs the worker on {@link #THREADS} threads released at once, while another one keeps dispatching
+     */
+    private void runWhileDispatching(final Worker worker) throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(THREADS + 1);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Thread dispatcher = new Thread(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            int value = 0;
+                            while (!done.get()) {
+                                registry.onNext(value++);
+                            }
+                        } catch (Throwable e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            threads.add(
+                    new Thread(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        start.await();
+                                        worker.run(thread);
+                                    } catch (Throwable e) {
+                                        failure.set(e);
+                                    }
+                                }
+                            }));
+        }
+
+        dispatcher.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        dispatcher.join();
+        if (null != failure.get()) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static void assertLast(TestObserver<Integer> observer, boolean delivered) {
+        final List<Integer> values = observer.values();
+        final boolean last = !values.isEmpty() && values.get(values.size() - 1) == LAST;
+        assertEquals(delivered, last);
+    }
+
+    private static ObservableEmitter<Integer> emitterOf(TestObserver<Integer> observer) {
+        final AtomicReference<ObservableEmitter<Integer>> emitter = new AtomicReference<>();
+        Observable.create(
+                new ObservableOnSubscribe<Integer>() {
+                    @Override
+                    public void subscribe(ObservableEmitter<Integer> e) {
+                        emitter.set(e);
+                    }
+                }).subscribe(observer);
+        return emitter.get();
+    }
+}
@@ -0,0 +1,135 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+import android.util.JsonReader;
+
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeocoderResponseParserTest {
+
+    private static final String RESULT = "{\"address_components\":["
+            + "{\"long_name\":\"1\",\"short_name\":\"1\",\"types\":[\"street_number\"]},"
+            + "{\"long_name\":\"Carrer de Pujades\",\"short_name\":\"Carrer de Pujades\",\"types\":[\"route\"]},"
+            + "{\"long_name\":\"Barcelona\",\"short_name\":\"Barcelona\",\"types\":[\"locality\",\"political\"]},"
+            + "{\"long_name\":\"Barcelona\",\"short_name\":\"B\",\"types\":[\"administrative_area_level_2\",\"political\"]},"
+            + "{\"long_name\":\"Catalunya\",\"short_name\":\"CT\",\"types\":[\"administrative_area_level_1\",\"political\"]},"
+            + "{\"long_name\":\"Spain\",\"short_name\":\"ES\",\"types\":[\"country\",\"political\"]},"
+            + "{\"long_name\":\"08005\",\"short_name\":\"08005\",\"types\":[\"postal_code\"]}],"
+            + "\"formatted_address\":\"Carrer de Pujades, 1, 08005 Barcelona, Spain\","
+            + "\"geometry\":{\"location\":{\"lat\":41.3925,\"lng\":2.1925},\"location_type\":\"ROOFTOP\","
+            + "\"viewport\":{\"northeast\":{\"lat\":41.39,\"lng\":2.19},\"southwest\":{\"lat\":41.38,\"lng\":2.18}}},"
+            + "\"types\":[\"street_address\"]}";
+
+    @Test
+    public void readsAddressComponents() throws IOException {
+        final List<Address> addresses = GeocoderResponseParser.parseAddresses(
+                reader("{\"results\":[" + RESULT + "],\"status\":\"OK\"}"), 5);
+
+        assertEquals(1, addresses.size());
+        final Address address = addresses.get(0);
+        assertEquals("Carrer de Pujades 1", address.getAddressLine(0));
+        assertEquals("Barcelona", address.getLocality());
+        assertEquals("Catalunya", address.getAdminArea());
+        assertEquals("Barcelona", address.getSubAdminArea());
+        assertEquals("ES", address.getCountryCode());
+        assertEquals("Spain", address.getCountryName());
+        assertEquals("08005", address.getPostalCode());
+        assertEquals(41.3925, address.getLatitude(), 0);
+        assertEquals(2.1925, address.getLongitude(), 0);
+        assertEquals("ROOFTOP", address.getExtras().getString(Geocoder.LOCATION_TYPE));
+    }
+
+    @Test
+    public void stopsReadingOnceEnoughResults() throws IOException {
+        // whatever follows the requested results is never looked at, not even the status
+        final List<Address> addresses = GeocoderResponseParser.parseAddresses(
+                reader("{\"results\":[" + RESULT + "," + RESULT + ",{\"address_compo"), 1);
+
+        assertEquals(1, addresses.size());
+        assertEquals("Barcelona", addresses.get(0).getLocality());
+    }
+
+    @Test(expected = GeocoderError.class)
+    public void statusOtherThanOkIsAnError() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":[],\"status\":\"OVER_QUERY_LIMIT\"}"), 5);
+    }
+
+    @Test(expected = GeocoderError.class)
+    public void missingStatusIsAnError() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":[]}"), 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedResponseFails() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":[{\"geometry\": nope}],\"status\":\"OK\"}"), 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedResponseFails() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":[{\"address_components\":[{\"long_name\":\"Barc"), 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBeforeEnoughResultsFails() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":[" + RESULT + ","), 2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unexpectedStructureFails() throws IOException {
+        GeocoderResponseParser.parseAddresses(reader("{\"results\":{\"geometry\":{}},\"status\":\"OK\"}"), 5);
+    }
+
+    @Test
+    public void readsFirstViewport() throws IOException {
+        final Geocoder.LocationInfo info = GeocoderResponseParser.parseLocationInfo(
+                reader("{\"results\":[{\"types\":[]}," + RESULT + ",{\"geometry\": nope"));
+
+        assertEquals(41.38, info.getLatLngViewPort().southwest.latitude, 0);
+        assertEquals(2.19, info.getLatLngViewPort().northeast.longitude, 0);
+        assertEquals(41.3925, info.getLatLng().latitude, 0);
+        assertNull(info.getLatLngBounds());
+    }
+
+    @Test
+    public void boundsStandForMissingViewport() throws IOException {
+        final Geocoder.LocationInfo info = GeocoderResponseParser.parseLocationInfo(
+                reader("{\"results\":[{\"geometry\":{\"bounds\":{\"northeast\":{\"lat\":2,\"lng\":3},"
+                               + "\"southwest\":{\"lat\":1,\"lng\":2}}}}],\"status\":\"OK\"}"));
+
+        assertEquals(1, info.getLatLngViewPort().southwest.latitude, 0);
+        assertEquals(3, info.getLatLngViewPort().northeast.longitude, 0);
+    }
+
+    @Test
+    public void noLocationInfoWithoutResults() throws IOException {
+        assertNull(GeocoderResponseParser.parseLocationInfo(reader("{\"results\":[],\"status\":\"ZERO_RESULTS\"}")));
+    }
+
+    @Test(expected = GeocoderError.class)
+    public void locationInfoWithoutGeometryIsAnError() throws IOException {
+        GeocoderResponseParser.parseLocationInfo(reader("{\"results\":[{\"types\":[]}],\"status\":\"OK\"}"));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedLocationInfoFails() throws IOException {
+        GeocoderResponseParser.parseLocationInfo(reader("{\"results\":[{\"geometry\":{\"viewport\":{\"northeast\":"));
+    }
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json));
+    }
+}
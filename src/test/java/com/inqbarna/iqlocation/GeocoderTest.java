@@ -0,0 +1,92 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeocoderTest {
+
+    private static final int CALLERS = 16;
+
+    private final SingleSubject<List<Address>> response = SingleSubject.create();
+    private final AtomicInteger                requests = new AtomicInteger();
+
+    private final GeocodingProvider provider = new GeocodingProvider() {
+        @Override
+        public Single<List<Address>> getAddresses(double lat, double lng, int maxResults, String languageCode) {
+            return response.doOnSubscribe(
+                    new Consumer<Disposable>() {
+                        @Override
+                        public void accept(Disposable disposable) {
+                            requests.incrementAndGet();
+                        }
+                    });
+        }
+
+        @Override
+        public Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode) {
+            return Maybe.empty();
+        }
+    };
+
+    @Test
+    public void parallelLookupsMakeOneProviderRequest() throws Exception {
+        final Geocoder geocoder = new Geocoder(provider, null, null);
+        final CyclicBarrier start = new CyclicBarrier(CALLERS);
+        final List<TestObserver<List<Address>>> observers = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final TestObserver<List<Address>> observer = new TestObserver<>();
+            observers.add(observer);
+            threads.add(
+                    new Thread(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        start.await();
+                                    } catch (Exception e) {
+                                        throw new AssertionError(e);
+                                    }
+                                    geocoder.getAddressesAsync(41.38, 2.17, 1, "en").subscribe(observer);
+                                }
+                            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final List<Address> addresses = Collections.singletonList(new Address(Locale.ENGLISH));
+        response.onSuccess(addresses);
+
+        assertEquals(1, requests.get());
+        assertEquals(CALLERS - 1, geocoder.getCoalescedCount());
+        for (TestObserver<List<Address>> observer : observers) {
+            observer.assertResult(addresses);
+        }
+    }
+}
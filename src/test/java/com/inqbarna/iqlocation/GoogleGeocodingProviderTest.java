@@ -0,0 +1,143 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Address;
+
+import com.inqbarna.iqlocation.util.GeocoderError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GoogleGeocodingProviderTest {
+
+    private static final String BARCELONA = "{\"results\":[{\"address_components\":[{\"long_name\":\"Barcelona\","
+            + "\"short_name\":\"Barcelona\",\"types\":[\"locality\",\"political\"]}],"
+            + "\"geometry\":{\"location\":{\"lat\":41.38,\"lng\":2.17}}}],\"status\":\"OK\"}";
+
+    private final List<HttpUrl> requested = new CopyOnWriteArrayList<>();
+
+    private MockWebServer server;
+    private Interceptor   redirect;
+    private OkHttpClient  base;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        // the webservice url is fixed, send its requests to the mock server instead
+        redirect = new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                final Request request = chain.request();
+                requested.add(request.url());
+                final HttpUrl url = request.url().newBuilder()
+                                           .scheme("http")
+                                           .host(server.getHostName())
+                                           .port(server.getPort())
+                                           .build();
+                return chain.proceed(request.newBuilder().url(url).build());
+            }
+        };
+        base = new OkHttpClient.Builder().addInterceptor(redirect).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void consecutiveLookupsReuseOneConnection() throws InterruptedException {
+        final OkHttpClient client = GoogleGeocodingProvider.newHttpClient(null, 5000, 5000);
+        final GoogleGeocodingProvider provider = new GoogleGeocodingProvider(client.newBuilder().addInterceptor(redirect).build());
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody(BARCELONA));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            final List<Address> addresses = provider.getAddresses(41.38, 2.17, 1, "en").blockingGet();
+            assertEquals(1, addresses.size());
+            assertEquals("Barcelona", addresses.get(0).getLocality());
+        }
+
+        for (int i = 0; i < 3; i++) {
+            final RecordedRequest request = server.takeRequest();
+            assertTrue(request.getPath(), request.getPath().contains("latlng=41.380000,2.170000"));
+            // a new connection would start over at zero
+            assertEquals(i, request.getSequenceNumber());
+        }
+        assertEquals(1, provider.getHttpClient().connectionPool().connectionCount());
+    }
+
+    @Test
+    public void clientsBuiltOnABaseShareItsPoolAndDispatcher() throws InterruptedException {
+        final OkHttpClient first = GoogleGeocodingProvider.newHttpClient(base, 5000, 5000);
+        final OkHttpClient second = GoogleGeocodingProvider.newHttpClient(base, 1000, 1000);
+        assertSame(base.connectionPool(), first.connectionPool());
+        assertSame(base.connectionPool(), second.connectionPool());
+        assertSame(base.dispatcher(), second.dispatcher());
+
+        server.enqueue(new MockResponse().setBody(BARCELONA));
+        server.enqueue(new MockResponse().setBody(BARCELONA));
+        new GoogleGeocodingProvider(first).getAddresses(41.38, 2.17, 1, "en").blockingGet();
+        new GoogleGeocodingProvider(second).getAddresses(41.38, 2.17, 1, "en").blockingGet();
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void webserviceIsReachedOverHttps() {
+        final GoogleGeocodingProvider provider = new GoogleGeocodingProvider(GoogleGeocodingProvider.newHttpClient(base, 5000, 5000));
+        server.enqueue(new MockResponse().setBody(BARCELONA));
+        server.enqueue(new MockResponse().setBody(BARCELONA));
+        provider.getAddresses(41.38, 2.17, 1, "en").blockingGet();
+        // the body has no viewport, only the request matters here
+        provider.getLocationInfo("Barcelona", "en").test().awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        assertEquals(2, requested.size());
+        for (HttpUrl url : requested) {
+            assertTrue(url.toString(), url.isHttps());
+            assertEquals("maps.googleapis.com", url.host());
+        }
+    }
+
+    @Test
+    public void unparseableResponsesEndInGeocoderErrors() {
+        final GoogleGeocodingProvider provider = new GoogleGeocodingProvider(base);
+        server.enqueue(new MockResponse().setBody("{\"results\":[{\"geometry\": nope}]}"));
+        server.enqueue(new MockResponse().setBody("{\"results\":[{\"address_comp"));
+        server.enqueue(new MockResponse().setBody("{\"results\":{},\"status\":\"OK\"}"));
+
+        for (int i = 0; i < 3; i++) {
+            final TestObserver<List<Address>> observer = provider.getAddresses(41.38, 2.17, 1, "en").test();
+            observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            observer.assertError(GeocoderError.class);
+        }
+    }
+}
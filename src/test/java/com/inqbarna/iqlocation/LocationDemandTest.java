@@ -0,0 +1,121 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationDemandTest {
+
+    private static final long FAST_INTERVAL_MILLIS = 5 * 1000; // 5 seconds in millis
+
+    private final LocationDemand fast = new LocationDemand.Builder().setInterval(FAST_INTERVAL_MILLIS)
+                                                                    .setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY)
+                                                                    .build();
+
+    @Test
+    public void requestWithoutMaxWaitDoesNotBatch() {
+        final LocationRequest request = LocationRequest.create().setInterval(LocationHelper.LONGER_INTERVAL_MILLIS);
+
+        // play services reports the interval when no max wait was set
+        assertEquals(LocationHelper.LONGER_INTERVAL_MILLIS, request.getMaxWaitTime());
+        assertEquals(0, LocationDemand.maxWaitTime(request));
+        assertEquals(0, LocationDemand.fromRequest(request).getMaxWaitTime());
+    }
+
+    @Test
+    public void fastDemandOnBatteryConservativeRequestDoesNotBatch() {
+        final LocationRequest battery = LocationHelper.builder(RuntimeEnvironment.application).build().getActiveRequest();
+
+        final LocationDemand strictest = LocationDemand.fromRequest(battery).strictest(fast);
+        assertEquals(FAST_INTERVAL_MILLIS, strictest.getInterval());
+        assertEquals(0, strictest.getMaxWaitTime());
+        assertEquals(0, LocationDemand.maxWaitTime(strictest.toRequest()));
+    }
+
+    @Test
+    public void fastSubscriberOnBatteryConservativeHelperDoesNotBatch() {
+        final RecordingBackend backend = new RecordingBackend();
+        final LocationHelper helper = LocationHelper.builder(RuntimeEnvironment.application).setBackend(backend).build();
+
+        final TestObserver<Location> observer = helper.getLocation(fast).test();
+        observer.assertNoErrors();
+
+        final LocationRequest requested = backend.requests.get(backend.requests.size() - 1);
+        assertEquals(FAST_INTERVAL_MILLIS, requested.getInterval());
+        assertEquals(0, LocationDemand.maxWaitTime(requested));
+        assertEquals(0, LocationDemand.maxWaitTime(helper.getActiveRequest()));
+        observer.dispose();
+    }
+
+    @Test
+    public void requestedBatchingIsKept() {
+        final LocationRequest batching = LocationRequest.create().setInterval(60 * 1000).setMaxWaitTime(10 * 60 * 1000);
+
+        final LocationDemand strictest = LocationDemand.fromRequest(batching).strictest(fast);
+        assertEquals(10 * 60 * 1000, strictest.getMaxWaitTime());
+        assertEquals(10 * 60 * 1000, LocationDemand.maxWaitTime(strictest.toRequest()));
+    }
+
+    @Test
+    public void waitNotLongerThanIntervalIsNoPreference() {
+        final LocationDemand demand = new LocationDemand.Builder().setInterval(60 * 1000).setMaxWaitTime(60 * 1000).build();
+
+        assertEquals(0, demand.getMaxWaitTime());
+        assertEquals(LocationDemand.fromRequest(demand.toRequest()), demand);
+    }
+
+    /**
+     * Becomes ready right away and keeps every request the helper asks for
+     */
+    private static final class RecordingBackend implements LocationBackend {
+        final List<LocationRequest> requests = new ArrayList<>();
+
+        private Callbacks callbacks;
+
+        @Override
+        public void start(@NonNull Callbacks callbacks) {
+            this.callbacks = callbacks;
+            callbacks.onReady();
+        }
+
+        @Override
+        public void stop() {
+            callbacks = null;
+        }
+
+        @Override
+        public boolean isReady() {
+            return null != callbacks;
+        }
+
+        @Override
+        public boolean requiresLocationPermission() {
+            return false;
+        }
+
+        @Override
+        public void requestLastLocation() {
+        }
+
+        @Override
+        public void requestUpdates(@NonNull LocationRequest request) {
+            requests.add(request);
+        }
+    }
+}
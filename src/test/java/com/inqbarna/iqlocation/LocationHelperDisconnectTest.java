@@ -0,0 +1,160 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationHelperDisconnectTest {
+
+    private static final long DELAY_MILLIS = 200;
+
+    private final FakeBackend   backend   = new FakeBackend();
+    private final TestScheduler scheduler = new TestScheduler();
+
+    @Test
+    public void nothingWakesUpWhileSubscribed() {
+        final TestObserver<Location> observer = helper(DELAY_MILLIS).getLocation().test();
+        final int calls = backend.calls.get();
+
+        advance(3 * DELAY_MILLIS);
+        assertEquals(1, backend.starts.get());
+        assertEquals(0, backend.stops.get());
+        assertEquals(calls, backend.calls.get());
+        observer.assertNoErrors();
+    }
+
+    @Test
+    public void disconnectsOnceDelayElapsesAfterLastSubscriberLeaves() {
+        final LocationHelper helper = helper(DELAY_MILLIS);
+        final TestObserver<Location> first = helper.getLocation().test();
+        final TestObserver<Location> second = helper.getLocation().test();
+
+        first.dispose();
+        advance(2 * DELAY_MILLIS);
+        assertEquals(0, backend.stops.get());
+
+        second.dispose();
+        advance(DELAY_MILLIS - 1);
+        assertEquals(0, backend.stops.get());
+        advance(1);
+        assertEquals(1, backend.stops.get());
+
+        advance(2 * DELAY_MILLIS);
+        assertEquals(1, backend.stops.get());
+    }
+
+    @Test
+    public void resubscribingWithinDelayKeepsConnection() {
+        final LocationHelper helper = helper(DELAY_MILLIS);
+        helper.getLocation().test().dispose();
+        advance(DELAY_MILLIS - 1);
+        final TestObserver<Location> again = helper.getLocation().test();
+
+        advance(3 * DELAY_MILLIS);
+        assertEquals(1, backend.starts.get());
+        assertEquals(0, backend.stops.get());
+
+        again.dispose();
+        advance(DELAY_MILLIS);
+        assertEquals(1, backend.stops.get());
+    }
+
+    @Test
+    public void zeroDelayDisconnectsRightAway() {
+        helper(0).getLocation().test().dispose();
+
+        assertEquals(1, backend.starts.get());
+        assertEquals(1, backend.stops.get());
+    }
+
+    @Test
+    public void reconnectsAfterDisconnecting() {
+        final LocationHelper helper = helper(DELAY_MILLIS);
+        helper.getLocation().test().dispose();
+        advance(DELAY_MILLIS);
+        assertEquals(1, backend.stops.get());
+
+        final TestObserver<Location> observer = helper.getLocation().test();
+        assertEquals(2, backend.starts.get());
+
+        final Location location = new Location("test");
+        backend.callbacks.onLocationChanged(location);
+        observer.assertValue(location);
+    }
+
+    private LocationHelper helper(long disconnectDelayMillis) {
+        return LocationHelper.builder(RuntimeEnvironment.application)
+                             .setBackend(backend)
+                             .setDisconnectDelay(disconnectDelayMillis)
+                             .setScheduler(scheduler)
+                             .build();
+    }
+
+    private void advance(long millis) {
+        scheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Becomes ready right away and records every call the helper makes
+     */
+    private static final class FakeBackend implements LocationBackend {
+        final AtomicInteger starts = new AtomicInteger();
+        final AtomicInteger stops  = new AtomicInteger();
+        final AtomicInteger calls  = new AtomicInteger();
+
+        volatile Callbacks callbacks;
+
+        @Override
+        public void start(@NonNull Callbacks callbacks) {
+            calls.incrementAndGet();
+            starts.incrementAndGet();
+            this.callbacks = callbacks;
+            callbacks.onReady();
+        }
+
+        @Override
+        public void stop() {
+            calls.incrementAndGet();
+            callbacks = null;
+            stops.incrementAndGet();
+        }
+
+        @Override
+        public boolean isReady() {
+            calls.incrementAndGet();
+            return null != callbacks;
+        }
+
+        @Override
+        public boolean requiresLocationPermission() {
+            return false;
+        }
+
+        @Override
+        public void requestLastLocation() {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void requestUpdates(@NonNull LocationRequest request) {
+            calls.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.inqbarna.iqlocation;
+
+import android.location.Location;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.location.LocationRequest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ReplayLocationBackendTest {
+
+    private static final int  FIXES              = 20;
+    private static final long FIX_SPACING_MILLIS = 1000;
+    private static final long INTERVAL_MILLIS    = 5 * 1000; // 5 seconds in millis
+    private static final long MAX_WAIT_MILLIS    = 4 * FIX_SPACING_MILLIS;
+
+    private final List<Location>     fixes     = recordedFixes();
+    private final RecordingCallbacks callbacks = new RecordingCallbacks();
+
+    private ReplayLocationBackend backend;
+
+    @After
+    public void stopReplay() {
+        if (null != backend) {
+            backend.stop();
+        }
+    }
+
+    @Test
+    public void requestWithoutMaxWaitDeliversEveryFixOnItsOwn() throws InterruptedException {
+        // play services reports the interval as max wait time here, which is no batching
+        replay(LocationRequest.create().setInterval(INTERVAL_MILLIS));
+
+        assertEquals(FIXES, callbacks.batches.size());
+        for (List<Location> batch : callbacks.batches) {
+            assertEquals(1, batch.size());
+        }
+        assertReplayedInOrder();
+    }
+
+    @Test
+    public void maxWaitLongerThanIntervalBatches() throws InterruptedException {
+        replay(LocationRequest.create().setInterval(FIX_SPACING_MILLIS).setMaxWaitTime(MAX_WAIT_MILLIS));
+
+        // a batch closes with the first fix at least the max wait after the one opening it
+        final int batchSize = (int) (MAX_WAIT_MILLIS / FIX_SPACING_MILLIS) + 1;
+        assertEquals((FIXES + batchSize - 1) / batchSize, callbacks.batches.size());
+        for (List<Location> batch : callbacks.batches.subList(0, callbacks.batches.size() - 1)) {
+            assertEquals(batchSize, batch.size());
+        }
+        assertReplayedInOrder();
+    }
+
+    private void replay(LocationRequest request) throws InterruptedException {
+        backend = new ReplayLocationBackend.Builder(fixes).setSpeed(ReplayLocationBackend.AS_FAST_AS_POSSIBLE)
+                                                          .setRebaseTime(false)
+                                                          .build();
+        backend.start(callbacks);
+        backend.requestUpdates(request);
+        assertTrue(backend.awaitEnd(10, TimeUnit.SECONDS));
+        assertEquals(FIXES, backend.getReplayedCount());
+    }
+
+    private void assertReplayedInOrder() {
+        final List<Location> replayed = new ArrayList<>();
+        for (List<Location> batch : callbacks.batches) {
+            replayed.addAll(batch);
+        }
+        assertEquals(fixes.size(), replayed.size());
+        for (int i = 0; i < fixes.size(); i++) {
+            assertEquals(fixes.get(i).getTime(), replayed.get(i).getTime());
+            assertNotSame(fixes.get(i), replayed.get(i));
+        }
+    }
+
+    private static List<Location> recordedFixes() {
+        final List<Location> fixes = new ArrayList<>(FIXES);
+        for (int i = 0; i < FIXES; i++) {
+            final Location fix = new Location("test");
+            fix.setLatitude(41.3925 + i * 0.0001);
+            fix.setLongitude(2.1925);
+            fix.setTime(i * FIX_SPACING_MILLIS);
+            fixes.add(fix);
+        }
+        return fixes;
+    }
+
+    private static final class RecordingCallbacks implements LocationBackend.Callbacks {
+        final List<List<Location>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onReady() {
+        }
+
+        @Override
+        public void onLocationChanged(@Nullable Location location) {
+        }
+
+        @Override
+        public void onLocationsChanged(@NonNull List<Location> locations) {
+            batches.add(new ArrayList<>(locations));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.inqbarna.iqlocation.cache;
+
+import android.location.Address;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.inqbarna.iqlocation.Geocoder;
+import com.inqbarna.iqlocation.GeocodingProvider;
+import com.inqbarna.iqlocation.util.GeoHash;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DiskGeocodeCacheTest {
+
+    private static final double LAT = 41.3925;
+    private static final double LNG = 2.1925;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final GeocodingProvider provider = new GeocodingProvider() {
+        @Override
+        public Single<List<Address>> getAddresses(final double lat, final double lng, int maxResults, String languageCode) {
+            return Single.fromCallable(
+                    new Callable<List<Address>>() {
+                        @Override
+                        public List<Address> call() {
+                            requests.incrementAndGet();
+                            final Address address = new Address(Locale.ENGLISH);
+                            address.setLatitude(lat);
+                            address.setLongitude(lng);
+                            return Collections.singletonList(address);
+                        }
+                    });
+        }
+
+        @Override
+        public Maybe<Geocoder.LocationInfo> getLocationInfo(String addressName, String languageCode) {
+            return Maybe.fromCallable(
+                    new Callable<Geocoder.LocationInfo>() {
+                        @Override
+                        public Geocoder.LocationInfo call() {
+                            requests.incrementAndGet();
+                            return info();
+                        }
+                    });
+        }
+    };
+
+    @Test
+    public void forwardQueryIsNormalizedAsInMemory() throws Exception {
+        final DiskGeocodeCache disk = new DiskGeocodeCache.Builder(folder.getRoot()).build();
+        disk.putLocationInfo("Carrer de  Mallorca", "en", info());
+
+        assertNotNull(disk.getLocationInfo("  carrer DE\tmallorca ", "en"));
+        assertNull(disk.getLocationInfo("carrer demallorca", "en"));
+        assertNull(disk.getLocationInfo("carrer de mallorca", "es"));
+    }
+
+    @Test
+    public void forwardQueryHitsBothTiersOrNeither() throws Exception {
+        final File directory = folder.getRoot();
+        final ForwardGeocodeCache memory = new ForwardGeocodeCache.Builder().build();
+        final Geocoder first = Geocoder.builder()
+                                       .setProvider(provider)
+                                       .setForwardCache(memory)
+                                       .setDiskCache(new DiskGeocodeCache.Builder(directory).build())
+                                       .build();
+        first.getLocationInfoAsync("Carrer de  Mallorca", "en").blockingGet();
+        first.getLocationInfoAsync(" carrer de mallorca", "en").blockingGet();
+        assertEquals(1, requests.get());
+
+        // a fresh process, only the disk tier is left
+        final Geocoder second = Geocoder.builder()
+                                        .setProvider(provider)
+                                        .setForwardCache(new ForwardGeocodeCache.Builder().build())
+                                        .setDiskCache(new DiskGeocodeCache.Builder(directory).build())
+                                        .build();
+        assertNotNull(second.getLocationInfoAsync("CARRER DE MALLORCA", "en").blockingGet());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void reverseLookupsShareTheCellsOfTheMemoryCache() throws Exception {
+        final File directory = folder.getRoot();
+        final ReverseGeocodeCache coarse = new ReverseGeocodeCache.Builder().setCellSize(1000).build();
+        // about 40 m apart, same memory cell but different cells at the disk default precision
+        final double otherLat = LAT + 0.0003;
+        final double otherLng = LNG + 0.0003;
+        assertEquals(coarse.cellOf(LAT, LNG), coarse.cellOf(otherLat, otherLng));
+        assertNotEquals(GeoHash.encode(LAT, LNG, ReverseGeocodeCache.DEFAULT_PRECISION),
+                        GeoHash.encode(otherLat, otherLng, ReverseGeocodeCache.DEFAULT_PRECISION));
+
+        final Geocoder first = Geocoder.builder()
+                                       .setProvider(provider)
+                                       .setReverseCache(coarse)
+                                       .setDiskCache(new DiskGeocodeCache.Builder(directory).build())
+                                       .build();
+        first.getAddressesAsync(LAT, LNG, 1, "en").blockingGet();
+        first.getAddressesAsync(otherLat, otherLng, 1, "en").blockingGet();
+        assertEquals(1, requests.get());
+
+        final Geocoder second = Geocoder.builder()
+                                        .setProvider(provider)
+                                        .setReverseCache(new ReverseGeocodeCache.Builder().setCellSize(1000).build())
+                                        .setDiskCache(new DiskGeocodeCache.Builder(directory).build())
+                                        .build();
+        final List<Address> addresses = second.getAddressesAsync(otherLat, otherLng, 1, "en").blockingGet();
+        assertEquals(1, requests.get());
+        assertEquals(LAT, addresses.get(0).getLatitude(), 0);
+    }
+
+    private static Geocoder.LocationInfo info() {
+        return new Geocoder.LocationInfo(new LatLngBounds(new LatLng(LAT, LNG), new LatLng(LAT, LNG)), new LatLng(LAT, LNG), null);
+    }
+}
@@ -0,0 +1,68 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AccuracyAgeFilterTest {
+
+    private static final float MAX_ACCURACY   = 100;
+    private static final long  MAX_AGE_MILLIS = 2 * 60 * 1000; // 2 minutes in millis
+
+    private final AccuracyAgeFilter filter = new AccuracyAgeFilter(MAX_ACCURACY, MAX_AGE_MILLIS);
+
+    @Test
+    public void accurateFreshFixPasses() {
+        final Location fix = aged(0);
+        fix.setAccuracy(MAX_ACCURACY);
+        assertSame(fix, filter.filter(fix));
+    }
+
+    @Test
+    public void inaccurateFixIsDropped() {
+        final Location fix = aged(0);
+        fix.setAccuracy(MAX_ACCURACY + 1);
+        assertNull(filter.filter(fix));
+    }
+
+    @Test
+    public void fixWithoutAccuracyPasses() {
+        final Location fix = aged(0);
+        assertSame(fix, filter.filter(fix));
+    }
+
+    @Test
+    public void staleFixIsDropped() {
+        final Location recent = aged(MAX_AGE_MILLIS - 10 * 1000);
+        assertSame(recent, filter.filter(recent));
+        assertNull(filter.filter(aged(MAX_AGE_MILLIS + 10 * 1000)));
+    }
+
+    @Test
+    public void noMaxAgeAcceptsAnyAge() {
+        final AccuracyAgeFilter anyAge = new AccuracyAgeFilter(MAX_ACCURACY, 0);
+        final Location old = aged(24 * 60 * 60 * 1000);
+        assertSame(old, anyAge.filter(old));
+    }
+
+    /**
+     * A fix taken the given time ago, on both the wall and the elapsed realtime clocks
+     */
+    private static Location aged(long ageMillis) {
+        final Location location = new Location("test");
+        location.setLatitude(41.3925);
+        location.setLongitude(2.1925);
+        location.setTime(System.currentTimeMillis() - ageMillis);
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos() - ageMillis * 1000000);
+        return location;
+    }
+}
@@ -0,0 +1,90 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DedupFilterTest {
+
+    private static final double LAT               = 41.3925;
+    private static final double LNG               = 2.1925;
+    private static final double DEGREES_PER_METER = 1 / 111195.0;
+    private static final long   WINDOW_MILLIS     = 60 * 1000; // 1 minute in millis
+
+    private final DedupFilter filter = new DedupFilter(10, WINDOW_MILLIS);
+
+    @Test
+    public void nearbyFixWithinWindowIsDropped() {
+        final Location first = location(LAT, LNG, 0);
+        assertSame(first, filter.filter(first));
+        assertNull(filter.filter(location(LAT + 5 * DEGREES_PER_METER, LNG, 1000)));
+        assertNull(filter.filter(location(LAT, LNG + 5 * DEGREES_PER_METER, 2000)));
+    }
+
+    @Test
+    public void distantFixPasses() {
+        filter.filter(location(LAT, LNG, 0));
+        final Location moved = location(LAT + 15 * DEGREES_PER_METER, LNG, 1000);
+        assertSame(moved, filter.filter(moved));
+    }
+
+    @Test
+    public void eastWestDistanceShrinksWithLatitude() {
+        // 15 m of longitude degrees at the equator are under 10 m at 60 degrees north
+        final DedupFilter north = new DedupFilter(10, WINDOW_MILLIS);
+        north.filter(location(60, LNG, 0));
+        assertNull(north.filter(location(60, LNG + 15 * DEGREES_PER_METER, 1000)));
+    }
+
+    @Test
+    public void fixAfterWindowPasses() {
+        filter.filter(location(LAT, LNG, 0));
+        final Location late = location(LAT, LNG, WINDOW_MILLIS);
+        assertSame(late, filter.filter(late));
+    }
+
+    @Test
+    public void noWindowDropsHoweverLate() {
+        final DedupFilter always = new DedupFilter(10, 0);
+        always.filter(location(LAT, LNG, 0));
+        assertNull(always.filter(location(LAT, LNG, 24 * 60 * 60 * 1000)));
+    }
+
+    @Test
+    public void creepIsMeasuredFromLastAcceptedFix() {
+        filter.filter(location(LAT, LNG, 0));
+        assertNull(filter.filter(location(LAT + 6 * DEGREES_PER_METER, LNG, 1000)));
+        final Location crept = location(LAT + 12 * DEGREES_PER_METER, LNG, 2000);
+        assertSame(crept, filter.filter(crept));
+    }
+
+    @Test
+    public void duplicateAcrossAntimeridianIsDropped() {
+        filter.filter(location(0, 180 - 2 * DEGREES_PER_METER, 0));
+        assertNull(filter.filter(location(0, -180 + 2 * DEGREES_PER_METER, 1000)));
+    }
+
+    @Test
+    public void resetForgetsTheLastFix() {
+        filter.filter(location(LAT, LNG, 0));
+        filter.reset();
+        final Location same = location(LAT, LNG, 1000);
+        assertSame(same, filter.filter(same));
+    }
+
+    private static Location location(double lat, double lng, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(time);
+        return location;
+    }
+}
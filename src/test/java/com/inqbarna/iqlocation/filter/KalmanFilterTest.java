@@ -0,0 +1,111 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KalmanFilterTest {
+
+    private static final double LAT               = 41.3925;
+    private static final double LNG               = 2.1925;
+    private static final double DEGREES_PER_METER = 1 / 111195.0;
+    private static final float  FIX_ACCURACY      = 20;
+
+    @Test
+    public void firstFixIsPassedAsIs() {
+        final Location first = location(LAT, LNG, 0, FIX_ACCURACY);
+        assertSame(first, new KalmanFilter().filter(first));
+    }
+
+    @Test
+    public void stationaryNoiseConvergesOnTheTruePosition() {
+        final Random random = new Random(3);
+        final KalmanFilter filter = new KalmanFilter(0.1f);
+
+        double worstRaw = 0;
+        Location smoothed = null;
+        for (int i = 0; i < 200; i++) {
+            final double lat = LAT + random.nextGaussian() * FIX_ACCURACY * DEGREES_PER_METER;
+            final double lng = LNG + random.nextGaussian() * FIX_ACCURACY * DEGREES_PER_METER;
+            worstRaw = Math.max(worstRaw, Geodesy.equirectangular(LAT, LNG, lat, lng));
+            smoothed = filter.filter(location(lat, lng, i * 1000, FIX_ACCURACY));
+        }
+
+        assertNotNull(smoothed);
+        final double error = Geodesy.equirectangular(LAT, LNG, smoothed.getLatitude(), smoothed.getLongitude());
+        assertTrue("Off by " + error + " m", error < FIX_ACCURACY / 2);
+        assertTrue("Off by " + error + " m, worst fix " + worstRaw + " m", error < worstRaw / 5);
+        assertTrue("Accuracy " + smoothed.getAccuracy(), smoothed.getAccuracy() < FIX_ACCURACY / 2);
+    }
+
+    @Test
+    public void accurateFixWeighsMore() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.filter(location(LAT, LNG, 0, 50));
+        final Location smoothed = filter.filter(location(LAT + 100 * DEGREES_PER_METER, LNG, 1000, 5));
+
+        // pulled most of the way to the precise fix
+        final double moved = (smoothed.getLatitude() - LAT) / DEGREES_PER_METER;
+        assertTrue("Moved " + moved + " m", moved > 95 && moved < 100);
+    }
+
+    @Test
+    public void givenLocationIsNotModified() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.filter(location(LAT, LNG, 0, FIX_ACCURACY));
+        final Location given = location(LAT + 10 * DEGREES_PER_METER, LNG, 1000, FIX_ACCURACY);
+
+        final Location smoothed = filter.filter(given);
+        assertNotSame(given, smoothed);
+        assertEquals(LAT + 10 * DEGREES_PER_METER, given.getLatitude(), 0);
+        assertEquals(FIX_ACCURACY, given.getAccuracy(), 0);
+        assertEquals(given.getTime(), smoothed.getTime());
+    }
+
+    @Test
+    public void trackAcrossAntimeridianStaysThere() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.filter(location(0, 180 - 5 * DEGREES_PER_METER, 0, FIX_ACCURACY));
+        for (int i = 1; i < 20; i++) {
+            final double lng = Geodesy.wrapLongitude(180 + (i % 2 == 0 ? -5 : 5) * DEGREES_PER_METER);
+            final Location smoothed = filter.filter(location(0, lng, i * 1000, FIX_ACCURACY));
+
+            final double error = Geodesy.equirectangular(0, 180, smoothed.getLatitude(), smoothed.getLongitude());
+            assertTrue("Fix " + i + " off by " + error + " m", error < 10);
+            assertTrue("Fix " + i + " at " + smoothed.getLongitude(), Math.abs(smoothed.getLongitude()) <= 180);
+        }
+    }
+
+    @Test
+    public void resetStartsOver() {
+        final KalmanFilter filter = new KalmanFilter();
+        filter.filter(location(LAT, LNG, 0, FIX_ACCURACY));
+        filter.reset();
+        final Location far = location(LAT + 1, LNG, 1000, FIX_ACCURACY);
+        assertSame(far, filter.filter(far));
+    }
+
+    private static Location location(double lat, double lng, long time, float accuracy) {
+        final Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(time);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+}
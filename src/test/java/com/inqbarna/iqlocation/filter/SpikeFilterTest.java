@@ -0,0 +1,98 @@
+package com.inqbarna.iqlocation.filter;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SpikeFilterTest {
+
+    private static final double LAT            = 41.3925;
+    private static final double LNG            = 2.1925;
+    private static final double DEGREES_PER_KM = 1 / 111.195;
+    private static final float  MAX_SPEED      = 70; // meters per second
+
+    private final SpikeFilter filter = new SpikeFilter(MAX_SPEED);
+
+    @Test
+    public void possibleMovesAreAccepted() {
+        final Location first = location(LAT, LNG, 0);
+        assertSame(first, filter.filter(first));
+        final Location second = location(LAT + 0.05 * DEGREES_PER_KM, LNG, 1000);
+        assertSame(second, filter.filter(second));
+        // 6 km in two minutes is 50 m/s
+        assertNotNull(filter.filter(location(LAT + 6 * DEGREES_PER_KM, LNG, 121000)));
+    }
+
+    @Test
+    public void jumpFasterThanPossibleIsRejected() {
+        filter.filter(location(LAT, LNG, 0));
+        assertNull(filter.filter(location(LAT + 5 * DEGREES_PER_KM, LNG, 1000)));
+
+        // compared against the last accepted fix, not the spike
+        assertNotNull(filter.filter(location(LAT + 0.02 * DEGREES_PER_KM, LNG, 2000)));
+    }
+
+    @Test
+    public void accuracyOfBothEndsIsSlack() {
+        final SpikeFilter slow = new SpikeFilter(10);
+        slow.filter(location(LAT, LNG, 0, 20));
+
+        // 40 m in a second, within the 20 + 20 m the fixes may be off
+        assertNotNull(slow.filter(location(LAT + 0.04 * DEGREES_PER_KM, LNG, 1000, 20)));
+        // the same move by precise fixes is a spike
+        slow.reset();
+        slow.filter(location(LAT, LNG, 0, 1));
+        assertNull(slow.filter(location(LAT + 0.04 * DEGREES_PER_KM, LNG, 1000, 1)));
+    }
+
+    @Test
+    public void relocationIsTakenAfterConsecutiveRejections() {
+        filter.filter(location(LAT, LNG, 0));
+        final double far = LAT + 50 * DEGREES_PER_KM;
+        for (int i = 1; i <= SpikeFilter.DEFAULT_MAX_REJECTIONS; i++) {
+            assertNull("Rejection " + i, filter.filter(location(far, LNG, i * 1000)));
+        }
+        final Location relocated = location(far, LNG, 10000);
+        assertSame(relocated, filter.filter(relocated));
+
+        // and it is the new reference
+        assertNotNull(filter.filter(location(far + 0.01 * DEGREES_PER_KM, LNG, 11000)));
+        assertNull(filter.filter(location(LAT, LNG, 12000)));
+    }
+
+    @Test
+    public void resetForgetsTheLastFix() {
+        filter.filter(location(LAT, LNG, 0));
+        filter.reset();
+        assertNotNull(filter.filter(location(LAT + 50 * DEGREES_PER_KM, LNG, 1000)));
+    }
+
+    @Test
+    public void moveAcrossAntimeridianIsShort() {
+        filter.filter(location(0, 179.9999, 0));
+        assertNotNull(filter.filter(location(0, -179.9999, 1000)));
+    }
+
+    private static Location location(double lat, double lng, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(time);
+        return location;
+    }
+
+    private static Location location(double lat, double lng, long time, float accuracy) {
+        final Location location = location(lat, lng, time);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+}
@@ -0,0 +1,181 @@
+package com.inqbarna.iqlocation.geofence;
+
+import android.location.Location;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeofenceEngineTest {
+
+    private static final double LAT = 41.3925;
+    private static final double LNG = 2.1925;
+
+    private static final long DWELL_MILLIS = 60 * 1000; // 1 minute in millis
+
+    @Test
+    public void entersDwellsAndExits() {
+        final GeofenceEngine engine = new GeofenceEngine.Builder().setDwellTime(DWELL_MILLIS).build();
+        engine.add(Geofence.circle("office", LAT, LNG, 100));
+
+        assertEvents(engine.evaluate(location(LAT + 0.01, LNG, 0)));
+        assertEvents(engine.evaluate(location(LAT, LNG, 1000)), "ENTER office");
+        assertEvents(engine.evaluate(location(LAT + 0.0005, LNG, 2000)));
+        assertEvents(engine.evaluate(location(LAT, LNG + 0.0005, 1000 + DWELL_MILLIS)), "DWELL office");
+        assertEvents(engine.evaluate(location(LAT, LNG, 2000 + DWELL_MILLIS)));
+        assertEvents(engine.evaluate(location(LAT + 0.01, LNG, 3000 + DWELL_MILLIS)), "EXIT office");
+        assertTrue(engine.getInside().isEmpty());
+    }
+
+    @Test
+    public void overlappingFencesTransitionIndependently() {
+        final GeofenceEngine engine = new GeofenceEngine.Builder().build();
+        engine.add(Geofence.circle("small", LAT, LNG, 100));
+        engine.add(Geofence.circle("large", LAT, LNG, 1000));
+
+        assertEvents(engine.evaluate(location(LAT + 0.005, LNG, 0)), "ENTER large");
+        assertEvents(engine.evaluate(location(LAT, LNG, 1000)), "ENTER small");
+        assertEvents(engine.evaluate(location(LAT + 0.02, LNG, 2000)), "EXIT large", "EXIT small");
+    }
+
+    @Test
+    public void polygonContainsOnlyItsInside() {
+        // an L shape, the notch at its north east is outside
+        final Geofence shape = Geofence.polygon(
+                "shape",
+                new double[]{0, 0, 1, 1, 2, 2},
+                new double[]{0, 2, 2, 1, 1, 0});
+
+        assertTrue(shape.contains(0.5, 0.5));
+        assertTrue(shape.contains(0.5, 1.5));
+        assertTrue(shape.contains(1.5, 0.5));
+        assertFalse(shape.contains(1.5, 1.5));
+        assertFalse(shape.contains(-0.5, 0.5));
+    }
+
+    @Test
+    public void removedFenceTriggersNothing() {
+        final GeofenceEngine engine = new GeofenceEngine.Builder().build();
+        engine.add(Geofence.circle("office", LAT, LNG, 100));
+        assertEvents(engine.evaluate(location(LAT, LNG, 0)), "ENTER office");
+
+        engine.remove("office");
+        assertEquals(0, engine.size());
+        assertTrue(engine.getInside().isEmpty());
+        assertEvents(engine.evaluate(location(LAT + 0.01, LNG, 1000)));
+        assertEvents(engine.evaluate(location(LAT, LNG, 2000)));
+    }
+
+    @Test
+    public void replacingFenceKeepsOneWithItsId() {
+        final GeofenceEngine engine = new GeofenceEngine.Builder().build();
+        engine.add(Geofence.circle("office", LAT, LNG, 100));
+        engine.add(Geofence.circle("office", LAT + 0.05, LNG, 100));
+
+        assertEquals(1, engine.size());
+        assertEvents(engine.evaluate(location(LAT, LNG, 0)));
+        assertEvents(engine.evaluate(location(LAT + 0.05, LNG, 1000)), "ENTER office");
+    }
+
+    @Test
+    public void circleAcrossAntimeridianIsFoundOnBothSides() {
+        final GeofenceEngine engine = new GeofenceEngine.Builder().build();
+        engine.add(Geofence.circle("dateline", 0, 179.999, 1000));
+
+        assertEvents(engine.evaluate(location(0, -179.999, 0)), "ENTER dateline");
+        assertEvents(engine.evaluate(location(0, 179.999, 1000)));
+        assertEvents(engine.evaluate(location(0, -179.98, 2000)), "EXIT dateline");
+        assertEvents(engine.evaluate(location(0, 179.995, 3000)), "ENTER dateline");
+
+        engine.remove("dateline");
+        engine.add(Geofence.circle("dateline", 0, -179.999, 1000));
+        assertEvents(engine.evaluate(location(0, -179.98, 4000)));
+        assertEvents(engine.evaluate(location(0, 179.997, 5000)), "ENTER dateline");
+    }
+
+    /**
+     * Walks through thousands of fences, small ones on the grid and large ones kept aside, checking every fix
+     * against testing all of them
+     */
+    @Test
+    public void indexAgreesWithTestingEveryFence() {
+        final Random random = new Random(42);
+        final GeofenceEngine engine = new GeofenceEngine.Builder().setDwellTime(Long.MAX_VALUE).build();
+        final List<Geofence> fences = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            final float radius = i % 500 == 0 ? 50000 : 50 + random.nextInt(2000);
+            fences.add(Geofence.circle("circle" + i, LAT + random.nextDouble() * 0.2, LNG + random.nextDouble() * 0.2, radius));
+        }
+        for (int i = 0; i < 500; i++) {
+            final double lat = LAT + random.nextDouble() * 0.2;
+            final double lng = LNG + random.nextDouble() * 0.2;
+            final double size = 0.001 + random.nextDouble() * 0.02;
+            fences.add(Geofence.polygon("triangle" + i, new double[]{lat, lat, lat + size}, new double[]{lng, lng + size, lng}));
+        }
+        for (Geofence fence : fences) {
+            engine.add(fence);
+        }
+
+        final Set<Geofence> inside = new HashSet<>();
+        double lat = LAT + 0.1;
+        double lng = LNG + 0.1;
+        for (int step = 0; step < 2000; step++) {
+            lat = Math.min(LAT + 0.2, Math.max(LAT, lat + (random.nextDouble() - 0.5) * 0.005));
+            lng = Math.min(LNG + 0.2, Math.max(LNG, lng + (random.nextDouble() - 0.5) * 0.005));
+
+            final List<String> expected = new ArrayList<>();
+            for (Geofence fence : fences) {
+                final boolean contains = fence.contains(lat, lng);
+                if (contains && inside.add(fence)) {
+                    expected.add("ENTER " + fence.getId());
+                } else if (!contains && inside.remove(fence)) {
+                    expected.add("EXIT " + fence.getId());
+                }
+            }
+            assertEquals("Step " + step, sorted(expected), describe(engine.evaluate(location(lat, lng, step * 1000))));
+            assertEquals(inside.size(), engine.getInside().size());
+        }
+    }
+
+    private static Location location(double lat, double lng, long time) {
+        final Location location = new Location("test");
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        location.setTime(time);
+        return location;
+    }
+
+    private static void assertEvents(List<GeofenceEvent> events, String... expected) {
+        final List<String> wanted = new ArrayList<>();
+        Collections.addAll(wanted, expected);
+        assertEquals(sorted(wanted), describe(events));
+    }
+
+    private static List<String> describe(List<GeofenceEvent> events) {
+        final List<String> described = new ArrayList<>();
+        for (GeofenceEvent event : events) {
+            final String type = event.getType() == GeofenceEvent.ENTER ? "ENTER" : event.getType() == GeofenceEvent.EXIT ? "EXIT" : "DWELL";
+            described.add(type + " " + event.getGeofence().getId());
+        }
+        return sorted(described);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        Collections.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,254 @@
+package com.inqbarna.iqlocation.offline;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedPlaceIndexTest {
+
+    private static final int    PLACES    = 5000;
+    private static final int    QUERIES   = 2000;
+    private static final double TOLERANCE = 1e-6; // meters, the two passes round longitudes differently
+
+    @Test
+    public void placesSurviveWriteAndMap() throws IOException {
+        final List<Place> places = new ArrayList<>();
+        places.add(new Place.Builder(41.3925, 2.1925).setRadius(5000)
+                                                     .setLocality("Barcelona")
+                                                     .setSubAdminArea("Barcelonès")
+                                                     .setAdminArea("Catalunya")
+                                                     .setCountryCode("ES")
+                                                     .setCountryName("España")
+                                                     .setPostalCode("08001")
+                                                     .build());
+        places.add(new Place.Builder(-90, -180).build());
+        places.add(new Place.Builder(90, 180).setLocality("").build());
+
+        final MappedPlaceIndex index = map(places);
+        assertEquals(places.size(), index.size());
+        for (Place expected : places) {
+            final int ordinal = nearestOrdinal(index, expected.getLatitude(), expected.getLongitude());
+            final Place place = index.get(ordinal);
+            assertEquals(expected.getLatitude(), place.getLatitude(), 1 / MappedPlaceIndex.FIXED_POINT);
+            assertEquals(expected.getLongitude(), place.getLongitude(), 1 / MappedPlaceIndex.FIXED_POINT);
+            assertEquals(expected.getRadius(), place.getRadius(), 0);
+            assertEquals(expected.getLocality(), place.getLocality());
+            assertEquals(expected.getSubAdminArea(), place.getSubAdminArea());
+            assertEquals(expected.getAdminArea(), place.getAdminArea());
+            assertEquals(expected.getCountryCode(), place.getCountryCode());
+            assertEquals(expected.getCountryName(), place.getCountryName());
+            assertEquals(expected.getPostalCode(), place.getPostalCode());
+        }
+    }
+
+    @Test
+    public void nearestAgreesWithScanningEveryPlace() throws IOException {
+        final Random random = new Random(23);
+        final MappedPlaceIndex index = map(randomPlaces(random));
+        final Place[] mapped = new Place[index.size()];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = index.get(i);
+        }
+
+        for (int q = 0; q < QUERIES; q++) {
+            final double lat = random.nextDouble() * 170 - 85;
+            final double lng = q % 4 == 0 ? 180 - random.nextDouble() * 2 : q % 4 == 1 ? -180 + random.nextDouble() * 2
+                    : random.nextDouble() * 360 - 180;
+            final double maxDistance = q % 3 == 0 ? Double.MAX_VALUE : random.nextDouble() * 500000;
+            final int[] out = new int[1 + random.nextInt(8)];
+
+            assertNearest("Query " + q + " at " + lat + ", " + lng, index, mapped, lat, lng, maxDistance, out);
+        }
+    }
+
+    @Test
+    public void nearestFindsPlacesAcrossAntimeridian() throws IOException {
+        final List<Place> places = new ArrayList<>();
+        places.add(new Place.Builder(0, -179.99).setLocality("East").build());
+        places.add(new Place.Builder(0, 170).setLocality("West").build());
+        // spread enough to put the two on opposite sides of the splits
+        final Random random = new Random(29);
+        for (int i = 0; i < 200; i++) {
+            places.add(new Place.Builder(random.nextDouble() * 160 - 80, random.nextDouble() * 340 - 170).build());
+        }
+        final MappedPlaceIndex index = map(places);
+
+        final int[] out = new int[1];
+        assertEquals(1, index.nearest(0, 179.99, 10000, out));
+        assertEquals("East", index.get(out[0]).getLocality());
+        assertEquals(1, index.nearest(0, -179.95, 2000000, out));
+        assertEquals("East", index.get(out[0]).getLocality());
+        assertEquals(1, index.nearest(0, 179, 10 * 111195, out));
+        assertEquals("East", index.get(out[0]).getLocality());
+    }
+
+    @Test
+    public void nearestRespectsMaxDistance() throws IOException {
+        final List<Place> places = new ArrayList<>();
+        places.add(new Place.Builder(0, 0).build());
+        places.add(new Place.Builder(0, 0.01).build());
+        final MappedPlaceIndex index = map(places);
+
+        final int[] out = new int[2];
+        assertEquals(0, index.nearest(0, 0.1, 1000, out));
+        assertEquals(1, index.nearest(0, 0.02, 1500, out));
+        assertEquals(2, index.nearest(0, 0.02, 2500, out));
+        assertEquals(0.01, index.get(out[0]).getLongitude(), 0);
+    }
+
+    @Test
+    public void findByNameAgreesWithInMemoryIndex() throws IOException {
+        final Random random = new Random(31);
+        final List<Place> places = randomPlaces(random);
+        final MappedPlaceIndex mapped = map(places);
+        final InMemoryPlaceIndex inMemory = new InMemoryPlaceIndex(places);
+
+        for (int i = 0; i < places.size(); i++) {
+            final String name = i % 2 == 0 ? "  PLACE " + i : "place " + i + " ";
+            final int found = mapped.findByName(name);
+            assertTrue(name, found >= 0);
+            assertEquals(name, inMemory.get(inMemory.findByName(name)).getLocality(), mapped.get(found).getLocality());
+        }
+        assertEquals(-1, mapped.findByName("nowhere"));
+        assertEquals(-1, inMemory.findByName("nowhere"));
+    }
+
+    @Test
+    public void findByNameWalksHashCollisions() throws IOException {
+        // all three normalize to names with the same hash code
+        final String[] colliding = {"Az", "B[", "C<"};
+        assertEquals("az".hashCode(), "b[".hashCode());
+        assertEquals("az".hashCode(), "c<".hashCode());
+
+        final List<Place> places = new ArrayList<>();
+        final Random random = new Random(37);
+        for (int i = 0; i < 100; i++) {
+            final String locality = i < colliding.length ? colliding[i] : colliding[i % 3] + " " + i;
+            places.add(new Place.Builder(random.nextDouble() * 10, random.nextDouble() * 10).setLocality(locality).build());
+        }
+        // and others before and after them in the sorted names
+        places.add(new Place.Builder(1, 1).setLocality("a").build());
+        places.add(new Place.Builder(2, 2).setLocality("zzzz").build());
+        final MappedPlaceIndex index = map(places);
+
+        for (String name : colliding) {
+            final int ordinal = index.findByName(name.toLowerCase());
+            assertTrue(name, ordinal >= 0);
+            assertEquals(name, index.get(ordinal).getLocality());
+        }
+        // same hash, no such place
+        assertEquals("az".hashCode(), "d\u001d".hashCode());
+        assertEquals(-1, index.findByName("d\u001d"));
+    }
+
+    @Test
+    public void mappedFileAndWrappedBufferAgree() throws IOException {
+        final List<Place> places = randomPlaces(new Random(41));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PlaceIndexWriter.write(places, bytes);
+
+        final File file = File.createTempFile("places", ".idx");
+        try {
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                bytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            final MappedPlaceIndex mapped = MappedPlaceIndex.open(file);
+            final MappedPlaceIndex wrapped = MappedPlaceIndex.wrap(ByteBuffer.wrap(bytes.toByteArray()));
+
+            final int[] fromMapped = new int[5];
+            final int[] fromWrapped = new int[5];
+            assertEquals(mapped.nearest(41.39, 2.19, Double.MAX_VALUE, fromMapped), wrapped.nearest(41.39, 2.19, Double.MAX_VALUE, fromWrapped));
+            assertTrue(Arrays.equals(fromMapped, fromWrapped));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherContentsAreRejected() throws IOException {
+        MappedPlaceIndex.wrap(ByteBuffer.wrap(new byte[MappedPlaceIndex.HEADER_BYTES]));
+    }
+
+    /**
+     * Compares against the distances to every place, as read back from the index so both see the same coordinates
+     */
+    private static void assertNearest(String message, MappedPlaceIndex index, Place[] mapped, double lat, double lng, double maxDistance,
+                                      int[] out) {
+        final double[] all = new double[mapped.length];
+        for (int i = 0; i < mapped.length; i++) {
+            all[i] = distance(lat, lng, mapped[i]);
+        }
+        Arrays.sort(all);
+        int expected = 0;
+        while (expected < out.length && expected < all.length && all[expected] <= maxDistance) {
+            expected++;
+        }
+
+        final int found = index.nearest(lat, lng, maxDistance, out);
+        assertEquals(message, expected, found);
+        final boolean[] seen = new boolean[mapped.length];
+        for (int i = 0; i < found; i++) {
+            assertEquals(message + ", result " + i, all[i], distance(lat, lng, mapped[out[i]]), TOLERANCE);
+            assertTrue(message + ", result " + i + " twice", !seen[out[i]]);
+            seen[out[i]] = true;
+        }
+    }
+
+    private static double distance(double lat, double lng, Place place) {
+        final double dy = (place.getLatitude() - lat) * Geodesy.METERS_PER_DEGREE;
+        final double dx = Geodesy.wrapLongitude(place.getLongitude() - lng) * Geodesy.metersPerLongitudeDegree(lat);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static int nearestOrdinal(MappedPlaceIndex index, double lat, double lng) {
+        final int[] out = new int[1];
+        assertEquals(1, index.nearest(lat, lng, 1, out));
+        return out[0];
+    }
+
+    /**
+     * Places all over, a denser cluster on each side of the antimeridian and a few sharing coordinates
+     */
+    private static List<Place> randomPlaces(Random random) {
+        final List<Place> places = new ArrayList<>(PLACES);
+        for (int i = 0; i < PLACES; i++) {
+            final double lat;
+            final double lng;
+            if (i % 5 == 0) {
+                lat = random.nextDouble() * 20 - 10;
+                lng = (random.nextBoolean() ? 180 : -180) - (random.nextDouble() - 0.5) * 4;
+            } else if (i % 97 == 0) {
+                lat = places.get(i - 1).getLatitude();
+                lng = places.get(i - 1).getLongitude();
+            } else {
+                lat = random.nextDouble() * 170 - 85;
+                lng = random.nextDouble() * 360 - 180;
+            }
+            places.add(new Place.Builder(lat, Geodesy.wrapLongitude(lng)).setLocality("Place " + i).build());
+        }
+        return places;
+    }
+
+    private static MappedPlaceIndex map(List<Place> places) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PlaceIndexWriter.write(places, bytes);
+        return MappedPlaceIndex.wrap(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+}
@@ -0,0 +1,207 @@
+package com.inqbarna.iqlocation.simplify;
+
+import android.location.Location;
+
+import com.inqbarna.iqlocation.util.Geodesy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TrajectorySimplifierTest {
+
+    private static final double LAT = 41.3925;
+    private static final double LNG = 2.1925;
+
+    /**
+     * Slack for the simplifier projecting around the start of its window instead of each segment
+     */
+    private static final double PROJECTION_SLACK_METERS = 0.01;
+
+    @Test
+    public void everyDroppedPointStaysWithinTolerance() {
+        for (int window : new int[]{3, 16, TrajectorySimplifier.DEFAULT_WINDOW_SIZE}) {
+            for (double tolerance : new double[]{1, 5, 25}) {
+                final double[][] trace = noisyWalk(new Random(window * 31 + (long) tolerance), 10000);
+                final Recorder kept = new Recorder();
+                final TrajectorySimplifier simplifier = new TrajectorySimplifier.Builder().setTolerance(tolerance)
+                                                                                          .setWindowSize(window)
+                                                                                          .build(kept);
+                for (double[] point : trace) {
+                    simplifier.add(point[0], point[1], (long) point[2]);
+                }
+                simplifier.flush();
+
+                assertWithinTolerance("window " + window + ", tolerance " + tolerance, trace, kept.sequences, tolerance);
+                assertEquals(trace.length, simplifier.getAddedCount());
+                assertEquals(kept.sequences.size(), simplifier.getKeptCount());
+                assertTrue(kept.sequences.size() < trace.length);
+            }
+        }
+    }
+
+    @Test
+    public void straightLineKeepsItsEnds() {
+        final Recorder kept = new Recorder();
+        final TrajectorySimplifier simplifier = new TrajectorySimplifier.Builder().build(kept);
+        for (int i = 0; i < 100; i++) {
+            simplifier.add(LAT + i * 0.0001, LNG, i * 1000);
+        }
+        simplifier.flush();
+
+        assertEquals(0L, (long) kept.sequences.get(0));
+        assertEquals(99L, (long) kept.sequences.get(kept.sequences.size() - 1));
+        assertEquals(2, kept.sequences.size());
+    }
+
+    @Test
+    public void zeroToleranceKeepsEveryCorner() {
+        final Recorder kept = new Recorder();
+        final TrajectorySimplifier simplifier = new TrajectorySimplifier.Builder().setTolerance(0).build(kept);
+        for (int i = 0; i < 50; i++) {
+            simplifier.add(LAT + i * 0.0001, LNG + (i % 2) * 0.0001, i * 1000);
+        }
+        simplifier.flush();
+
+        assertEquals(50, kept.sequences.size());
+        assertEquals(49 * 1000L, (long) kept.times.get(49));
+    }
+
+    @Test
+    public void flushEndsTrajectory() {
+        final Recorder kept = new Recorder();
+        final TrajectorySimplifier simplifier = new TrajectorySimplifier.Builder().build(kept);
+        simplifier.add(LAT, LNG, 0);
+        assertEquals(1, kept.sequences.size());
+        simplifier.add(LAT + 0.001, LNG, 1000);
+        simplifier.flush();
+        assertEquals(2, kept.sequences.size());
+
+        // the next point starts over, passed on right away
+        simplifier.add(LAT + 0.002, LNG + 0.002, 2000);
+        assertEquals(3, kept.sequences.size());
+        assertEquals(2L, (long) kept.sequences.get(2));
+        simplifier.flush();
+        assertEquals(3, kept.sequences.size());
+    }
+
+    @Test
+    public void transformerPassesKeptLocationsInOrder() {
+        final double[][] trace = noisyWalk(new Random(5), 2000);
+        final List<Location> locations = new ArrayList<>(trace.length);
+        for (double[] point : trace) {
+            final Location location = new Location("test");
+            location.setLatitude(point[0]);
+            location.setLongitude(point[1]);
+            location.setTime((long) point[2]);
+            locations.add(location);
+        }
+
+        final TestObserver<Location> observer = Observable.fromIterable(locations)
+                                                          .compose(new TrajectorySimplifier.Builder().setTolerance(5)
+                                                                                                     .setWindowSize(32)
+                                                                                                     .transformer())
+                                                          .test();
+        observer.assertComplete();
+
+        final List<Location> kept = observer.values();
+        final List<Long> sequences = new ArrayList<>(kept.size());
+        int next = 0;
+        for (Location location : kept) {
+            // the very same instances, in their original order
+            while (locations.get(next) != location) {
+                next++;
+            }
+            sequences.add((long) next);
+        }
+        assertSame(locations.get(0), kept.get(0));
+        assertWithinTolerance("transformer", trace, sequences, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeToleranceIsRejected() {
+        new TrajectorySimplifier.Builder().setTolerance(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tinyWindowIsRejected() {
+        new TrajectorySimplifier.Builder().setWindowSize(2);
+    }
+
+    /**
+     * Checks kept points are in order, include both ends, and no dropped one is further than the tolerance from
+     * the segment between the kept points around it
+     */
+    private static void assertWithinTolerance(String message, double[][] trace, List<Long> kept, double tolerance) {
+        assertEquals(message, 0L, (long) kept.get(0));
+        assertEquals(message, trace.length - 1, (long) kept.get(kept.size() - 1));
+        for (int k = 1; k < kept.size(); k++) {
+            final int from = kept.get(k - 1).intValue();
+            final int to = kept.get(k).intValue();
+            assertTrue(message + ", kept out of order at " + to, to > from);
+            for (int i = from + 1; i < to; i++) {
+                final double distance = segmentDistance(trace[i], trace[from], trace[to]);
+                assertTrue(message + ", point " + i + " is " + distance + " m away",
+                           distance <= tolerance + PROJECTION_SLACK_METERS);
+            }
+        }
+    }
+
+    private static double segmentDistance(double[] point, double[] from, double[] to) {
+        final double metersPerLngDegree = Geodesy.metersPerLongitudeDegree(from[0]);
+        final double dx = Geodesy.wrapLongitude(to[1] - from[1]) * metersPerLngDegree;
+        final double dy = (to[0] - from[0]) * Geodesy.METERS_PER_DEGREE;
+        final double px = Geodesy.wrapLongitude(point[1] - from[1]) * metersPerLngDegree;
+        final double py = (point[0] - from[0]) * Geodesy.METERS_PER_DEGREE;
+        final double lengthSq = dx * dx + dy * dy;
+        final double t = lengthSq > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSq)) : 0;
+        return Math.hypot(px - t * dx, py - t * dy);
+    }
+
+    /**
+     * A walk turning gradually, with a few meters of noise on each fix
+     *
+     * @return latitude, longitude and time of each point
+     */
+    private static double[][] noisyWalk(Random random, int count) {
+        final double[][] trace = new double[count][];
+        double lat = LAT;
+        double lng = LNG;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            heading += (random.nextDouble() - 0.5) * 0.3;
+            lat += Math.cos(heading) * 0.00005;
+            lng += Math.sin(heading) * 0.00005;
+            trace[i] = new double[]{
+                    lat + random.nextGaussian() * 0.00002,
+                    lng + random.nextGaussian() * 0.00002,
+                    i * 1000};
+        }
+        return trace;
+    }
+
+    private static final class Recorder implements TrajectorySimplifier.Sink {
+        final List<Long> sequences = new ArrayList<>();
+        final List<Long> times     = new ArrayList<>();
+
+        @Override
+        public void onPoint(double latitude, double longitude, long time, long sequence) {
+            sequences.add(sequence);
+            times.add(time);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.inqbarna.iqlocation.trace;
+
+import android.location.Location;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TraceRoundTripTest {
+
+    private static final double DEGREES_TOLERANCE = 0.51e-7; // half a fixed point step, plus double rounding
+    private static final float  SCALED_TOLERANCE  = 0.0051f; // half a hundredth, plus float rounding
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyFixSurvivesWriteAndRead() throws IOException {
+        final File file = folder.newFile("walk.trace");
+        final List<Location> fixes = randomWalk(new Random(7), 1000, 0);
+
+        final TraceWriter writer = new TraceWriter.Builder(file).setBlockSize(64).setSyncOnCommit(false).build();
+        for (Location fix : fixes) {
+            writer.append(fix);
+        }
+        assertEquals(fixes.size(), writer.getFixCount());
+        writer.close();
+
+        assertTrace(fixes, TraceReader.open(file));
+        assertEquals(fixes.size(), TraceReader.open(file).read().count().blockingGet().intValue());
+    }
+
+    @Test
+    public void extremeValuesSurvive() throws IOException {
+        final File file = folder.newFile("extremes.trace");
+        final List<Location> fixes = new ArrayList<>();
+        fixes.add(fix(0, -90, -180));
+        fixes.add(fix(Long.MAX_VALUE / 2, 90, 180));
+        fixes.add(fix(-1, 0, 0));
+        final Location full = fix(1, -33.8688197, 151.2092955);
+        full.setAccuracy(5000);
+        full.setSpeed(0.01f);
+        full.setBearing(359.99f);
+        fixes.add(full);
+
+        final TraceWriter writer = TraceWriter.open(file);
+        for (Location fix : fixes) {
+            writer.append(fix);
+        }
+        writer.close();
+
+        assertTrace(fixes, TraceReader.open(file));
+    }
+
+    @Test
+    public void reopeningAppendsAfterExistingFixes() throws IOException {
+        final File file = folder.newFile("resumed.trace");
+        final List<Location> fixes = randomWalk(new Random(11), 300, 0);
+
+        TraceWriter writer = new TraceWriter.Builder(file).setBlockSize(50).build();
+        for (Location fix : fixes.subList(0, 120)) {
+            writer.append(fix);
+        }
+        writer.close();
+        writer = new TraceWriter.Builder(file).setBlockSize(50).build();
+        for (Location fix : fixes.subList(120, fixes.size())) {
+            writer.append(fix);
+        }
+        writer.close();
+
+        assertTrace(fixes, TraceReader.open(file));
+    }
+
+    @Test
+    public void onlyCommittedFixesAreReadWhileWriting() throws IOException {
+        final File file = folder.newFile("live.trace");
+        final List<Location> fixes = randomWalk(new Random(13), 30, 0);
+
+        final TraceWriter writer = TraceWriter.open(file);
+        for (Location fix : fixes.subList(0, 20)) {
+            writer.append(fix);
+        }
+        writer.commit();
+        for (Location fix : fixes.subList(20, fixes.size())) {
+            writer.append(fix);
+        }
+
+        // the file is grown ahead of the data, the reader stops at the first block that is not there
+        assertTrace(fixes.subList(0, 20), TraceReader.open(file));
+        writer.close();
+        assertTrace(fixes, TraceReader.open(file));
+    }
+
+    @Test
+    public void tornTailIsDroppedAndOverwritten() throws IOException {
+        final File file = folder.newFile("torn.trace");
+        final List<Location> fixes = randomWalk(new Random(17), 40, 0);
+
+        final TraceWriter writer = TraceWriter.open(file);
+        for (Location fix : fixes.subList(0, 20)) {
+            writer.append(fix);
+        }
+        writer.commit();
+        for (Location fix : fixes.subList(20, 30)) {
+            writer.append(fix);
+        }
+        writer.close();
+        truncate(file, 3);
+
+        assertTrace(fixes.subList(0, 20), TraceReader.open(file));
+
+        final TraceWriter resumed = TraceWriter.open(file);
+        for (Location fix : fixes.subList(30, 40)) {
+            resumed.append(fix);
+        }
+        resumed.close();
+
+        final List<Location> expected = new ArrayList<>(fixes.subList(0, 20));
+        expected.addAll(fixes.subList(30, 40));
+        assertTrace(expected, TraceReader.open(file));
+    }
+
+    @Test
+    public void corruptBlockEndsTheTrace() throws IOException {
+        final File file = folder.newFile("corrupt.trace");
+        final List<Location> fixes = randomWalk(new Random(19), 30, 0);
+
+        final TraceWriter writer = TraceWriter.open(file);
+        for (Location fix : fixes.subList(0, 10)) {
+            writer.append(fix);
+        }
+        writer.commit();
+        final long firstBlockEnd = writer.getCommittedBytes();
+        for (Location fix : fixes.subList(10, 20)) {
+            writer.append(fix);
+        }
+        writer.commit();
+        for (Location fix : fixes.subList(20, 30)) {
+            writer.append(fix);
+        }
+        writer.close();
+
+        // a flipped payload byte in the second block fails its checksum
+        final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            final long position = firstBlockEnd + TraceFormat.BLOCK_HEADER_BYTES + 3;
+            raw.seek(position);
+            final int value = raw.read();
+            raw.seek(position);
+            raw.write(value ^ 0x10);
+        } finally {
+            raw.close();
+        }
+
+        assertTrace(fixes.subList(0, 10), TraceReader.open(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException {
+        final File file = folder.newFile("other.bin");
+        final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        } finally {
+            raw.close();
+        }
+        TraceReader.open(file);
+    }
+
+    private static void assertTrace(List<Location> expected, TraceReader reader) {
+        final TraceCursor cursor = reader.cursor();
+        for (int i = 0; i < expected.size(); i++) {
+            final Location fix = expected.get(i);
+            final String message = "Fix " + i;
+            assertTrue(message, cursor.next());
+            assertEquals(message, fix.getTime(), cursor.getTime());
+            assertEquals(message, fix.getLatitude(), cursor.getLatitude(), DEGREES_TOLERANCE);
+            assertEquals(message, fix.getLongitude(), cursor.getLongitude(), DEGREES_TOLERANCE);
+            assertEquals(message, fix.hasAccuracy(), cursor.hasAccuracy());
+            assertEquals(message, fix.hasSpeed(), cursor.hasSpeed());
+            assertEquals(message, fix.hasBearing(), cursor.hasBearing());
+            if (fix.hasAccuracy()) {
+                assertEquals(message, fix.getAccuracy(), cursor.getAccuracy(), SCALED_TOLERANCE);
+            }
+            if (fix.hasSpeed()) {
+                assertEquals(message, fix.getSpeed(), cursor.getSpeed(), SCALED_TOLERANCE);
+            }
+            if (fix.hasBearing()) {
+                assertEquals(message, fix.getBearing(), cursor.getBearing(), SCALED_TOLERANCE);
+            }
+
+            final Location location = cursor.toLocation();
+            assertEquals(message, TraceCursor.PROVIDER, location.getProvider());
+            assertEquals(message, cursor.getTime(), location.getTime());
+            assertEquals(message, cursor.hasSpeed(), location.hasSpeed());
+        }
+        assertFalse(cursor.next());
+    }
+
+    /**
+     * Fixes a second apart on average, with optional values present or missing at random
+     */
+    private static List<Location> randomWalk(Random random, int count, long startTime) {
+        final List<Location> fixes = new ArrayList<>(count);
+        long time = startTime;
+        double lat = 41.3925;
+        double lng = 2.1925;
+        for (int i = 0; i < count; i++) {
+            time += 500 + random.nextInt(1000);
+            lat += (random.nextDouble() - 0.5) * 0.0002;
+            lng += (random.nextDouble() - 0.5) * 0.0002;
+            final Location fix = fix(time, lat, lng);
+            if (random.nextInt(10) > 0) {
+                fix.setAccuracy(3 + random.nextFloat() * 30);
+            }
+            if (random.nextInt(3) > 0) {
+                fix.setSpeed(random.nextFloat() * 15);
+            }
+            if (random.nextInt(3) > 0) {
+                fix.setBearing(random.nextFloat() * 360);
+            }
+            fixes.add(fix);
+        }
+        return fixes;
+    }
+
+    private static Location fix(long time, double lat, double lng) {
+        final Location location = new Location("test");
+        location.setTime(time);
+        location.setLatitude(lat);
+        location.setLongitude(lng);
+        return location;
+    }
+
+    private static void truncate(File file, int bytes) throws IOException {
+        final RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        try {
+            raw.setLength(raw.length() - bytes);
+        } finally {
+            raw.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.inqbarna.iqlocation.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reference distances are WGS84 geodesics as computed by GeographicLib, or meridian arcs for the ones through a pole
+ */
+public class GeodesyTest {
+
+    private static final double MILLIMETER = 0.001;
+
+    /**
+     * Equator to pole along a meridian on WGS84
+     */
+    private static final double MERIDIAN_QUADRANT = 10001965.729;
+
+    /**
+     * Short north south distances on the equator, where the meridian is flattest, are the furthest off the sphere
+     */
+    private static final double SPHERE_TOLERANCE = 0.006;
+
+    @Test
+    public void vincentyMatchesReferenceGeodesics() {
+        // Flinders Peak to Buninyong, the example of Vincenty's paper
+        assertEquals(54972.271, Geodesy.vincenty(-37.95103342, 144.42486789, -37.65282114, 143.92649553), MILLIMETER);
+        // JFK to LHR
+        assertEquals(5551759.400, Geodesy.vincenty(40.6, -73.8, 51.6, -0.5), MILLIMETER);
+        assertEquals(MERIDIAN_QUADRANT, Geodesy.vincenty(0, 0, 90, 0), MILLIMETER);
+        // a degree along the equator is the major axis times its angle
+        assertEquals(6378137 * Math.PI / 180, Geodesy.vincenty(0, 0, 0, 1), MILLIMETER);
+    }
+
+    @Test
+    public void vincentyIsSymmetricAndZeroForCoincidentPoints() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final double lat1 = random.nextDouble() * 160 - 80;
+            final double lng1 = random.nextDouble() * 360 - 180;
+            final double lat2 = random.nextDouble() * 160 - 80;
+            final double lng2 = random.nextDouble() * 360 - 180;
+            assertEquals(Geodesy.vincenty(lat1, lng1, lat2, lng2), Geodesy.vincenty(lat2, lng2, lat1, lng1), MILLIMETER);
+            assertEquals(0, Geodesy.vincenty(lat1, lng1, lat1, lng1), 0);
+        }
+    }
+
+    @Test
+    public void vincentyNearThePoles() {
+        // across the pole, the geodesic follows the meridian
+        assertEquals(22338.796, Geodesy.vincenty(89.9, 0, 89.9, 180), MILLIMETER);
+        assertEquals(111693.865, Geodesy.vincenty(89, 45, 90, 0), MILLIMETER);
+        assertEquals(MERIDIAN_QUADRANT, Geodesy.vincenty(-90, 0, 0, 123), MILLIMETER);
+    }
+
+    @Test
+    public void vincentyAcrossAntimeridianTakesTheShortWay() {
+        assertEquals(Geodesy.vincenty(0, 0, 0, 1), Geodesy.vincenty(0, 179.5, 0, -179.5), MILLIMETER);
+        assertEquals(Geodesy.vincenty(10, -1, 20, 1), Geodesy.vincenty(10, 179, 20, -179), MILLIMETER);
+    }
+
+    @Test
+    public void nonConvergingVincentyFallsBackToHaversine() {
+        // nearly antipodal points, where the iteration does not converge
+        assertFallback(19959679.267, -41.32, 174.81, 40.96, -5.50);
+        assertFallback(19936288.579, 0, 0, 0.5, 179.5);
+        // exactly antipodal on the equator, the geodesic goes over a pole
+        assertFallback(2 * MERIDIAN_QUADRANT, 0, 0, 0, 180);
+    }
+
+    @Test
+    public void haversineIsExactOnTheSphere() {
+        final double quarter = Geodesy.EARTH_RADIUS_METERS * Math.PI / 2;
+        assertEquals(quarter, Geodesy.haversine(0, 0, 0, 90), MILLIMETER);
+        assertEquals(quarter, Geodesy.haversine(0, 0, 90, 0), MILLIMETER);
+        assertEquals(quarter + 0.1 * Geodesy.METERS_PER_DEGREE, Geodesy.haversine(89.9, 10, 0, 10 + 180), MILLIMETER);
+        assertEquals(2 * quarter, Geodesy.haversine(0, 0, 0, 180), MILLIMETER);
+        assertEquals(2 * quarter, Geodesy.haversine(-90, 0, 90, 0), MILLIMETER);
+        assertEquals(Geodesy.METERS_PER_DEGREE, Geodesy.haversine(0, 179.5, 0, -179.5), MILLIMETER);
+    }
+
+    @Test
+    public void sphericalDistancesStayCloseToTheEllipsoid() {
+        final Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            final double lat1 = random.nextDouble() * 170 - 85;
+            final double lng1 = random.nextDouble() * 360 - 180;
+            final double lat2 = random.nextDouble() * 170 - 85;
+            final double lng2 = random.nextDouble() * 360 - 180;
+            final double ellipsoid = Geodesy.vincenty(lat1, lng1, lat2, lng2);
+            assertRelative(ellipsoid, Geodesy.haversine(lat1, lng1, lat2, lng2), SPHERE_TOLERANCE);
+
+            // a few kilometers away, the projection is as good
+            final double lat3 = lat1 + (random.nextDouble() - 0.5) * 0.05;
+            final double lng3 = lng1 + (random.nextDouble() - 0.5) * 0.05;
+            assertRelative(Geodesy.vincenty(lat1, lng1, lat3, lng3), Geodesy.equirectangular(lat1, lng1, lat3, lng3), SPHERE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void meridianArcOnEquatorIsFurthestOffTheSphere() {
+        final double ellipsoid = Geodesy.vincenty(-0.01, 0, 0.01, 0);
+        assertRelative(ellipsoid, Geodesy.haversine(-0.01, 0, 0.01, 0), SPHERE_TOLERANCE);
+        assertTrue(Geodesy.haversine(-0.01, 0, 0.01, 0) > ellipsoid * 1.005);
+    }
+
+    @Test
+    public void bearingPointsTheRightWay() {
+        assertEquals(0, Geodesy.bearing(0, 0, 10, 0), 1e-9);
+        assertEquals(90, Geodesy.bearing(0, 0, 0, 10), 1e-9);
+        assertEquals(180, Geodesy.bearing(0, 0, -10, 0), 1e-9);
+        assertEquals(270, Geodesy.bearing(0, 0, 0, -10), 1e-9);
+        assertEquals(90, Geodesy.bearing(0, 179.5, 0, -179.5), 1e-9);
+        assertEquals(270, Geodesy.bearing(0, -179.5, 0, 179.5), 1e-9);
+        // over the pole
+        assertEquals(0, Geodesy.bearing(80, 0, 80, 180), 1e-9);
+        // a quarter of the way round and half way up
+        assertEquals(45, Geodesy.bearing(0, 0, 45, 90), 1e-9);
+    }
+
+    @Test
+    public void destinationRetracesDistanceAndBearing() {
+        final Random random = new Random(3);
+        final double[] out = new double[2];
+        for (int i = 0; i < 1000; i++) {
+            final double lat = random.nextDouble() * 170 - 85;
+            final double lng = random.nextDouble() * 360 - 180;
+            final double bearing = random.nextDouble() * 360;
+            final double distance = random.nextDouble() * 5000000;
+            Geodesy.destination(lat, lng, bearing, distance, out);
+
+            assertTrue(out[1] >= -180 && out[1] < 180);
+            assertEquals(distance, Geodesy.haversine(lat, lng, out[0], out[1]), 1e-6 * distance + MILLIMETER);
+            assertEquals(0, Geodesy.wrapLongitude(Geodesy.bearing(lat, lng, out[0], out[1]) - bearing), 1e-6);
+        }
+    }
+
+    @Test
+    public void destinationOverThePoleWrapsLongitude() {
+        final double[] out = new double[2];
+        Geodesy.destination(89, 0, 0, 2 * Geodesy.METERS_PER_DEGREE, out);
+        assertEquals(89, out[0], 1e-9);
+        assertEquals(-180, out[1], 1e-9);
+
+        Geodesy.destination(0, 179.5, 90, Geodesy.METERS_PER_DEGREE, out);
+        assertEquals(0, out[0], 1e-9);
+        assertEquals(-179.5, out[1], 1e-9);
+    }
+
+    @Test
+    public void boundingBoxContainsTheCircle() {
+        assertCircleInBox(41.3925, 2.1925, 1000);
+        assertCircleInBox(-33.8688, 151.2093, 250000);
+        assertCircleInBox(70, -20, 500000);
+    }
+
+    @Test
+    public void boundingBoxAcrossAntimeridianIsNotWrapped() {
+        final double[] box = assertCircleInBox(0, 179.9, 50000);
+        assertTrue(box[Geodesy.BOX_MAX_LNG] > 180);
+        assertTrue(box[Geodesy.BOX_MIN_LNG] > -180);
+
+        final double[] west = assertCircleInBox(0, -179.9, 50000);
+        assertTrue(west[Geodesy.BOX_MIN_LNG] < -180);
+    }
+
+    @Test
+    public void boundingBoxAroundPoleCoversEveryLongitude() {
+        final double[] box = assertCircleInBox(89.5, 30, 100000);
+        assertEquals(90, box[Geodesy.BOX_MAX_LAT], 0);
+        assertEquals(-180, box[Geodesy.BOX_MIN_LNG], 0);
+        assertEquals(180, box[Geodesy.BOX_MAX_LNG], 0);
+
+        final double[] south = assertCircleInBox(-89.9, 0, 50000);
+        assertEquals(-90, south[Geodesy.BOX_MIN_LAT], 0);
+    }
+
+    @Test
+    public void wrapLongitudeTakesTheShortWay() {
+        assertEquals(-2, Geodesy.wrapLongitude(358), 0);
+        assertEquals(2, Geodesy.wrapLongitude(-358), 0);
+        assertEquals(180, Geodesy.wrapLongitude(180), 0);
+        assertEquals(-180, Geodesy.wrapLongitude(-180), 0);
+        assertEquals(45, Geodesy.wrapLongitude(45), 0);
+    }
+
+    private static void assertFallback(double geodesic, double lat1, double lng1, double lat2, double lng2) {
+        final double distance = Geodesy.vincenty(lat1, lng1, lat2, lng2);
+        assertEquals(Geodesy.haversine(lat1, lng1, lat2, lng2), distance, 0);
+        assertRelative(geodesic, distance, SPHERE_TOLERANCE);
+    }
+
+    private static void assertRelative(double expected, double actual, double tolerance) {
+        assertTrue("Expected " + expected + " but was " + actual, Math.abs(actual - expected) <= tolerance * expected + MILLIMETER);
+    }
+
+    /**
+     * Checks every point on the circle, with longitudes unwrapped around the center, is within the box, and the box
+     * is no taller than the circle
+     */
+    private static double[] assertCircleInBox(double lat, double lng, double radiusMeters) {
+        final double[] box = new double[4];
+        Geodesy.boundingBox(lat, lng, radiusMeters, box);
+        assertEquals(Math.min(90, lat + Geodesy.latitudeDelta(radiusMeters)), box[Geodesy.BOX_MAX_LAT], 1e-9);
+        assertEquals(Math.max(-90, lat - Geodesy.latitudeDelta(radiusMeters)), box[Geodesy.BOX_MIN_LAT], 1e-9);
+
+        final double[] out = new double[2];
+        for (int bearing = 0; bearing < 360; bearing++) {
+            Geodesy.destination(lat, lng, bearing, radiusMeters, out);
+            final double unwrapped = lng + Geodesy.wrapLongitude(out[1] - lng);
+            final String message = "Bearing " + bearing + " reaches " + out[0] + ", " + out[1];
+            assertTrue(message, out[0] >= box[Geodesy.BOX_MIN_LAT] - 1e-9 && out[0] <= box[Geodesy.BOX_MAX_LAT] + 1e-9);
+            assertTrue(message, box[Geodesy.BOX_MAX_LNG] >= 180 && box[Geodesy.BOX_MIN_LNG] <= -180
+                    || unwrapped >= box[Geodesy.BOX_MIN_LNG] - 1e-9 && unwrapped <= box[Geodesy.BOX_MAX_LNG] + 1e-9);
+        }
+        return box;
+    }
+}
@@ -0,0 +1,153 @@
+package com.inqbarna.iqlocation.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Maybe;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.MaybeSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 32;
+
+    private final SingleFlight<String, String> flight        = new SingleFlight<>();
+    private final MaybeSubject<String>         upstream      = MaybeSubject.create();
+    private final AtomicInteger                subscriptions = new AtomicInteger();
+    private final Maybe<String>                source        = upstream.doOnSubscribe(
+            new Consumer<Disposable>() {
+                @Override
+                public void accept(Disposable disposable) {
+                    subscriptions.incrementAndGet();
+                }
+            });
+
+    @Test
+    public void concurrentCallersShareOneUpstreamCall() throws Exception {
+        final List<TestObserver<String>> observers = joinConcurrently("key");
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(CALLERS - 1, flight.getSharedCount());
+        assertEquals(1, flight.size());
+
+        upstream.onSuccess("result");
+        for (TestObserver<String> observer : observers) {
+            observer.assertResult("result");
+        }
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void errorIsSharedToo() throws Exception {
+        final List<TestObserver<String>> observers = joinConcurrently("key");
+        final IOException error = new IOException("down");
+
+        upstream.onError(error);
+        for (TestObserver<String> observer : observers) {
+            observer.assertError(error);
+        }
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void emptyIsSharedToo() {
+        final TestObserver<String> first = flight.join("key", source).test();
+        final TestObserver<String> second = flight.join("key", source).test();
+
+        upstream.onComplete();
+        first.assertResult();
+        second.assertResult();
+        assertEquals(1, subscriptions.get());
+    }
+
+    @Test
+    public void differentKeysDoNotShare() {
+        flight.join("one", source).test();
+        flight.join("two", source).test();
+
+        assertEquals(2, subscriptions.get());
+        assertEquals(0, flight.getSharedCount());
+        assertEquals(2, flight.size());
+    }
+
+    @Test
+    public void finishedFlightIsNotReused() {
+        flight.join("key", source).test();
+        upstream.onSuccess("result");
+
+        final MaybeSubject<String> next = MaybeSubject.create();
+        final TestObserver<String> late = flight.join("key", next).test();
+        assertTrue(next.hasObservers());
+        next.onSuccess("newer");
+        late.assertResult("newer");
+    }
+
+    @Test
+    public void upstreamCancelledOnlyOnceEveryCallerDisposes() {
+        final TestObserver<String> first = flight.join("key", source).test();
+        final TestObserver<String> second = flight.join("key", source).test();
+
+        first.dispose();
+        assertTrue(upstream.hasObservers());
+        assertEquals(1, flight.size());
+
+        second.dispose();
+        assertFalse(upstream.hasObservers());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void callerJoiningAfterCancelStartsOver() {
+        flight.join("key", source).test().dispose();
+
+        final TestObserver<String> again = flight.join("key", source).test();
+        assertEquals(2, subscriptions.get());
+        upstream.onSuccess("result");
+        again.assertResult("result");
+    }
+
+    /**
+     * Subscribes {@link #CALLERS} lookups for the key from as many threads, released at once
+     */
+    private List<TestObserver<String>> joinConcurrently(final String key) throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(CALLERS);
+        final List<TestObserver<String>> observers = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final TestObserver<String> observer = new TestObserver<>();
+            observers.add(observer);
+            threads.add(
+                    new Thread(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        start.await();
+                                    } catch (Exception e) {
+                                        throw new AssertionError(e);
+                                    }
+                                    flight.join(key, source).subscribe(observer);
+                                }
+                            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return observers;
+    }
+}